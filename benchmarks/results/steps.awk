@@ -0,0 +1,15 @@
+# B/op каждого метода цепочки GameCoreBenchmark: разница с предыдущим шагом.
+# awk -f results/steps.awk <файл из -rf text -rff>
+/^GameCoreBenchmark\.step/ && $1 ~ /alloc\.rate\.norm/ {
+    split($1, name, /[._:]/)
+    step = name[3]
+    bytes[step, $2] = $5
+    if (!(step in seen)) { seen[step] = 1; order[++steps] = step }
+    if (!($2 in known)) { known[$2] = 1; sizes[++count] = $2 }
+}
+END {
+    printf "%-24s %9s %10s\n", "Method", "(players)", "B/op"
+    for (i = 2; i <= steps; i++)
+        for (j = 1; j <= count; j++)
+            printf "%-24s %9s %10.0f\n", order[i], sizes[j], bytes[order[i], sizes[j]] - bytes[order[i - 1], sizes[j]]
+}
@@ -0,0 +1,91 @@
+import benchmarks.GameWorkload;
+
+import java.util.List;
+
+public class GameCoreWorkload implements GameWorkload {
+    private static final long SEED = 42;
+
+    private int size;
+    private long[] ids;
+    private String[] names;
+
+    @Override
+    public void setPlayers(int players) {
+        size = players;
+        ids = new long[players];
+        names = new String[players];
+        for (int i = 0; i < players; i++) {
+            ids[i] = 1_000_000L + i;
+            names[i] = "player" + i;
+        }
+    }
+
+    @Override
+    public Object lobby() {
+        GameCore game = new GameCore();
+        game.setGameChatId(-1);
+        for (int i = 0; i < size; i++) {
+            game.addPlayer(ids[i], names[i]);
+        }
+        return game;
+    }
+
+    // Зерно фиксировано, чтобы раздача и дальнейшие шаги были одинаковыми во всех прогонах
+    @Override
+    public Object started() {
+        GameCore game = (GameCore) lobby();
+        game.startGame(SEED);
+        return game;
+    }
+
+    // Мафия бьёт последнего, доктор лечит себя, комиссар проверяет мафию — игра не заканчивается
+    @Override
+    public Object nightActions() {
+        GameCore game = (GameCore) started();
+        List<Player> players = game.getPlayers();
+        Player mafia = firstWithRole(players, Role.MAFIA);
+        Player doctor = firstWithRole(players, Role.DOCTOR);
+        Player commissar = firstWithRole(players, Role.COMMISSAR);
+        game.processNightAction(mafia, players.get(size - 1));
+        game.processNightAction(doctor, doctor);
+        game.processNightAction(commissar, mafia);
+        return game;
+    }
+
+    private static Player firstWithRole(List<Player> players, Role role) {
+        for (Player p : players) {
+            if (p.getRole() == role) return p;
+        }
+        throw new IllegalStateException("No " + role);
+    }
+
+    @Override
+    public Object resolvedNight() {
+        GameCore game = (GameCore) nightActions();
+        game.resolveNightActions();
+        return game;
+    }
+
+    // Все живые голосуют, половина потом меняет голос
+    @Override
+    public Object voted() {
+        GameCore game = (GameCore) resolvedNight();
+        List<Player> players = game.getPlayers();
+        long first = players.get(size / 2).getUserId();
+        long second = players.get(0).getUserId();
+        for (int i = 0; i < size; i++) {
+            game.addVote(players.get(i).getUserId(), first);
+        }
+        for (int i = 0; i < size; i += 2) {
+            game.addVote(players.get(i).getUserId(), second);
+        }
+        return game;
+    }
+
+    @Override
+    public Object resolvedDay() {
+        GameCore game = (GameCore) voted();
+        game.resolveDayVoting();
+        return game;
+    }
+}
@@ -0,0 +1,261 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.*;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Нагрузочный стенд: тысячи сыгранных ботами партий против подменного Telegram API.
+// java -cp target/benchmarks.jar LoadTest --games 1000 --players 8 --phase-ms 300 --latency-ms 30 --rate429 0.01 --chatter 20
+// --workers 3 --churn-s 2: ingress и три воркера на unix-сокете, каждые 2 с один воркер уходит и возвращается
+public class LoadTest {
+    private final int games;
+    private final int playersPerGame;
+    private final long phaseMillis;
+    private final long apiLatencyMillis;
+    private final double rate429;
+    private final boolean rateLimited;
+    private final int chatterPerSecond;
+    private final int workerCount;
+    private final long churnMillis;
+
+    private MafiaBot bot;
+    private Ingress ingress;
+    private final List<MafiaBot> workerBots = new ArrayList<>();
+    private final List<PartitionWorker> workerLinks = new ArrayList<>();
+    private final AtomicLong restarts = new AtomicLong();
+    private final ScheduledExecutorService clock = Executors.newScheduledThreadPool(4, r -> {
+        Thread t = new Thread(r, "fake-telegram");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<Long, String> usernames = new ConcurrentHashMap<>(); // userId → ник
+    private final Map<Long, Long> pendingCommands = new ConcurrentHashMap<>(); // userId → nanoTime отправки команды
+    private final ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong outboundCalls = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong updateIds = new AtomicLong();
+    private final CountDownLatch finished;
+
+    LoadTest(Map<String, String> options) {
+        games = Integer.parseInt(options.getOrDefault("games", "500"));
+        playersPerGame = Integer.parseInt(options.getOrDefault("players", "8"));
+        phaseMillis = Long.parseLong(options.getOrDefault("phase-ms", "300"));
+        apiLatencyMillis = Long.parseLong(options.getOrDefault("latency-ms", "20"));
+        rate429 = Double.parseDouble(options.getOrDefault("rate429", "0"));
+        rateLimited = Boolean.parseBoolean(options.getOrDefault("rate-limit", "false"));
+        chatterPerSecond = Integer.parseInt(options.getOrDefault("chatter", "0"));
+        workerCount = Integer.parseInt(options.getOrDefault("workers", "0"));
+        churnMillis = (long) (Double.parseDouble(options.getOrDefault("churn-s", "0")) * 1000);
+        finished = new CountDownLatch(games);
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "error");
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        new LoadTest(options).run(Long.parseLong(options.getOrDefault("timeout-s", "300")));
+        System.exit(0);
+    }
+
+    void run(long timeoutSeconds) throws Exception {
+        Path journalDir = Files.createTempDirectory("mafia-load");
+        if (workerCount > 0) {
+            startPartitioned(journalDir);
+        } else {
+            bot = new MafiaBot(this::execute, phaseMillis, journalDir, rateLimited);
+            bot.recoverGames();
+        }
+
+        long started = System.nanoTime();
+        for (int g = 0; g < games; g++) {
+            long groupId = -(1_000_000L + g);
+            long creator = userId(g, 0);
+            inject(groupId, creator, "/new");
+            for (int i = 0; i < playersPerGame; i++) {
+                inject(groupId, userId(g, i), "/join");
+            }
+            inject(groupId, creator, "/start");
+            if (chatterPerSecond > 0) {
+                int game = g;
+                // Флуд обычным текстом в группе: игроки болтают, пока идёт партия
+                clock.scheduleAtFixedRate(() -> {
+                    if (finished.getCount() == 0) return;
+                    inject(groupId, userId(game, ThreadLocalRandom.current().nextInt(playersPerGame)), "ну и кто же мафия?");
+                }, 0, 1_000_000 / chatterPerSecond, TimeUnit.MICROSECONDS);
+            }
+        }
+        boolean done = finished.await(timeoutSeconds, TimeUnit.SECONDS);
+        report(System.nanoTime() - started, done);
+    }
+
+    private void startPartitioned(Path dir) throws Exception {
+        ingress = new Ingress(dir.resolve("ingress.sock").toString(), null);
+        ingress.start();
+        for (int i = 0; i < workerCount; i++) {
+            workerBots.add(null);
+            workerLinks.add(null);
+            startWorker(dir, i);
+        }
+        while (ingress.getReadyWorkers() < workerCount) {
+            Thread.sleep(10);
+        }
+        if (churnMillis > 0) {
+            // Поочерёдный передеплой: воркер отдаёт игры остальным, останавливается и поднимается с тем же журналом
+            clock.scheduleWithFixedDelay(() -> {
+                int i = (int) (restarts.getAndIncrement() % workerCount);
+                try {
+                    workerLinks.get(i).leave(5_000);
+                    workerBots.get(i).shutdown(5_000);
+                    startWorker(dir, i);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }, churnMillis, churnMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void startWorker(Path dir, int i) throws Exception {
+        MafiaBot worker = new MafiaBot(this::execute, phaseMillis, dir.resolve("worker-" + i), rateLimited);
+        worker.recoverGames();
+        PartitionWorker link = new PartitionWorker(worker, dir.resolve("ingress.sock").toString(), "worker-" + i);
+        worker.attachPartition(link);
+        link.start();
+        workerBots.set(i, worker);
+        workerLinks.set(i, link);
+    }
+
+    // Подменный execute: задержка сети, случайные 429 и реакция ботов-игроков на полученный текст
+    private CompletableFuture<Message> execute(SendMessage message) {
+        outboundCalls.incrementAndGet();
+        CompletableFuture<Message> result = new CompletableFuture<>();
+        clock.schedule(() -> {
+            if (ThreadLocalRandom.current().nextDouble() < rate429) {
+                throttled.incrementAndGet();
+                result.completeExceptionally(tooManyRequests());
+                return;
+            }
+            result.complete(new Message());
+            react(Long.parseLong(message.getChatId()), message.getText());
+        }, apiLatencyMillis, TimeUnit.MILLISECONDS);
+        return result;
+    }
+
+    private void react(long chatId, String text) {
+        if (chatId > 0) {
+            if (text.startsWith("✅")) {
+                Long sentAt = pendingCommands.remove(chatId);
+                if (sentAt != null) latencies.add(System.nanoTime() - sentAt);
+            }
+            List<String> alive = section(text, "Alive players:\n");
+            String self = usernames.get(chatId);
+            if (text.contains("/kill [")) command(chatId, "/kill", pick(alive, self));
+            if (text.contains("/save [")) command(chatId, "/save", pick(alive, null));
+            if (text.contains("/check [")) command(chatId, "/check", pick(alive, self));
+        } else if (text.startsWith("☀️")) {
+            List<String> alive = section(text, "Живые игроки:\n");
+            for (String voter : alive) {
+                long voterId = userIdByName(voter);
+                command(voterId, "/vote", pick(alive, voter));
+            }
+        } else if (text.startsWith("🏁")) {
+            finished.countDown();
+        }
+    }
+
+    private void command(long userId, String command, String target) {
+        if (target == null) return;
+        long thinkTime = ThreadLocalRandom.current().nextLong(Math.max(1, phaseMillis / 4));
+        clock.schedule(() -> {
+            pendingCommands.put(userId, System.nanoTime());
+            inject(userId, userId, command + " " + target);
+        }, thinkTime, TimeUnit.MILLISECONDS);
+    }
+
+    private void inject(long chatId, long userId, String text) {
+        String username = usernames.computeIfAbsent(userId, id -> "bot" + id);
+        User user = new User(userId, username, false);
+        user.setUserName(username);
+        Message message = new Message();
+        message.setMessageId((int) updateIds.incrementAndGet());
+        message.setChat(new Chat(chatId, chatId < 0 ? "group" : "private"));
+        message.setFrom(user);
+        message.setText(text);
+        Update update = new Update();
+        update.setUpdateId((int) updateIds.get());
+        update.setMessage(message);
+        updates.incrementAndGet();
+        if (ingress != null) {
+            ingress.onUpdateReceived(update);
+        } else {
+            bot.onUpdateReceived(update);
+        }
+    }
+
+    private TelegramApiRequestException tooManyRequests() {
+        try {
+            ApiResponse<?> response = mapper.readValue(
+                    "{\"ok\":false,\"error_code\":429,\"description\":\"Too Many Requests: retry after 1\",\"parameters\":{\"retry_after\":1}}",
+                    ApiResponse.class);
+            return new TelegramApiRequestException("Error sending message", response);
+        } catch (Exception e) {
+            return new TelegramApiRequestException("Too Many Requests");
+        }
+    }
+
+    private void report(long elapsedNanos, boolean done) {
+        double seconds = elapsedNanos / 1e9;
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        System.out.printf("games: %d x %d players, phase %d ms, api latency %d ms, 429 rate %.3f, rate limit %s, chatter %d/s%n",
+                games, playersPerGame, phaseMillis, apiLatencyMillis, rate429, rateLimited, chatterPerSecond);
+        System.out.printf("finished: %d/%d in %.1f s%s%n", games - finished.getCount(), games, seconds, done ? "" : " (timeout)");
+        if (workerCount > 0) {
+            System.out.printf("workers: %d, restarts: %d, ingress: %s%n", workerCount, restarts.get(),
+                    ingress.getMetrics().scrape().lines().filter(l -> l.startsWith("mafia_ingress_")).toList());
+        }
+        System.out.printf("updates: %d (%.0f/s)%n", updates.get(), updates.get() / seconds);
+        System.out.printf("outbound calls: %d (%.0f/s, %.1f per game), 429 injected: %d%n",
+                outboundCalls.get(), outboundCalls.get() / seconds, (double) outboundCalls.get() / games, throttled.get());
+        if (sorted.length > 0) {
+            System.out.printf("command -> ack latency ms: p50 %.1f, p90 %.1f, p99 %.1f, max %.1f (n=%d)%n",
+                    percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+                    sorted[sorted.length - 1] / 1e6, sorted.length);
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))] / 1e6;
+    }
+
+    private static List<String> section(String text, String header) {
+        int start = text.indexOf(header);
+        if (start < 0) return List.of();
+        List<String> names = new ArrayList<>();
+        for (String line : text.substring(start + header.length()).split("\n")) {
+            if (line.isBlank()) break;
+            names.add(line.trim());
+        }
+        return names;
+    }
+
+    private static String pick(List<String> names, String exclude) {
+        List<String> options = names.stream().filter(n -> !n.equals(exclude)).toList();
+        return options.isEmpty() ? null : options.get(ThreadLocalRandom.current().nextInt(options.size()));
+    }
+
+    private static long userId(int game, int player) {
+        return game * 1000L + player + 1;
+    }
+
+    private static long userIdByName(String username) {
+        return Long.parseLong(username.substring("bot".length()));
+    }
+}
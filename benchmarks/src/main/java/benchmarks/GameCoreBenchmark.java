@@ -0,0 +1,58 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Горячие пути GameCore на лобби от 4 до 500 игроков; запуск: java -jar target/benchmarks.jar -prof gc.
+// Шаги идут цепочкой: каждый бенчмарк строит игру заново и проходит все предыдущие шаги, поэтому
+// стоимость метода — разница со строкой предыдущего шага (и по времени, и по B/op). Подготовка через
+// @Setup(Level.Invocation) для методов меньше микросекунды искажает время, а её аллокации попадают в B/op
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GameCoreBenchmark {
+    @Param({"4", "20", "100", "500"})
+    int players;
+
+    GameWorkload workload;
+
+    @Setup(Level.Trial)
+    public void create() throws ReflectiveOperationException {
+        workload = (GameWorkload) Class.forName("GameCoreWorkload").getDeclaredConstructor().newInstance();
+        workload.setPlayers(players);
+    }
+
+    @Benchmark
+    public Object step1_addPlayers() {
+        return workload.lobby();
+    }
+
+    @Benchmark
+    public Object step2_assignRoles() {
+        return workload.started();
+    }
+
+    @Benchmark
+    public Object step3_nightActions() {
+        return workload.nightActions();
+    }
+
+    @Benchmark
+    public Object step4_resolveNightActions() {
+        return workload.resolvedNight();
+    }
+
+    @Benchmark
+    public Object step5_addVotes() {
+        return workload.voted();
+    }
+
+    @Benchmark
+    public Object step6_resolveDayVoting() {
+        return workload.resolvedDay();
+    }
+}
@@ -0,0 +1,19 @@
+package benchmarks;
+
+// JMH не генерирует код для пакета по умолчанию, поэтому бенчмарк видит GameCore через этот интерфейс.
+// Каждый шаг строит новую игру и проходит все предыдущие: отдельная подготовка состояния не нужна
+public interface GameWorkload {
+    void setPlayers(int players);
+
+    Object lobby();
+
+    Object started();
+
+    Object nightActions();
+
+    Object resolvedNight();
+
+    Object voted();
+
+    Object resolvedDay();
+}
@@ -0,0 +1,154 @@
+import io.github.cdimascio.dotenv.Dotenv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+// Неизменяемый снимок настроек. Источники по убыванию приоритета: переменные окружения, .env, файл CONFIG_FILE.
+// Без логгера: снимок читается до настройки slf4j, чтобы взять из него уровень логов
+public record BotConfig(Startup startup, ChatRules defaults, Map<Long, ChatRules> chats,
+                        int inboundPerSecond, int inboundBurst, Duration lobbyTtl, int maxLobbies) {
+
+    // Читаются один раз при старте; смена требует перезапуска
+    public record Startup(String botToken, String botMode, Path journalDir, int metricsPort, String metricsBind,
+                          int shutdownTimeoutSeconds,
+                          String webhookUrl, String webhookPath, String webhookSecret, int port,
+                          String ingressListen, String ingressAddress, String workerId, String logLevel) {
+    }
+
+    // Правила партии; в файле переопределяются для отдельного чата ключами chat.<id>.NIGHT_SECONDS и т.п.
+    public record ChatRules(Duration night, Duration day, int minPlayers) {
+        public ChatRules {
+            if (night.isNegative() || night.isZero() || day.isNegative() || day.isZero()) {
+                throw new IllegalArgumentException("Phase durations must be positive");
+            }
+            if (minPlayers < 3) {
+                throw new IllegalArgumentException("MIN_PLAYERS must be at least 3, got " + minPlayers);
+            }
+        }
+
+        public Duration phase(GameCore.GameState state) {
+            return state == GameCore.GameState.NIGHT ? night : day;
+        }
+    }
+
+    private static final String CHAT_PREFIX = "chat.";
+
+    public ChatRules rules(long chatId) {
+        return chats.getOrDefault(chatId, defaults);
+    }
+
+    // Для стендов: всё по умолчанию, кроме длительности фаз
+    public static BotConfig withPhases(Duration phase) {
+        BotConfig base = load(key -> null);
+        return new BotConfig(base.startup, new ChatRules(phase, phase, base.defaults.minPlayers()), Map.of(),
+                base.inboundPerSecond, base.inboundBurst, base.lobbyTtl, base.maxLobbies);
+    }
+
+    public static BotConfig load(Path file) throws IOException {
+        Properties properties = new Properties();
+        if (file != null && Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+        }
+        Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load(); // уже включает переменные окружения
+        BotConfig config = load(key -> {
+            String value = dotenv.get(key);
+            return value == null || value.isEmpty() ? properties.getProperty(key) : value;
+        });
+
+        Map<Long, ChatRules> chats = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.startsWith(CHAT_PREFIX)) continue;
+            int dot = key.indexOf('.', CHAT_PREFIX.length());
+            if (dot < 0) throw new IllegalArgumentException("Expected chat.<id>.<KEY>, got " + key);
+            long chatId;
+            try {
+                chatId = Long.parseLong(key.substring(CHAT_PREFIX.length(), dot));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad chat id in " + key);
+            }
+            if (chats.containsKey(chatId)) continue;
+            String prefix = CHAT_PREFIX + chatId + ".";
+            ChatRules base = config.defaults;
+            chats.put(chatId, new ChatRules(
+                    seconds(prefix + "NIGHT_SECONDS", properties.getProperty(prefix + "NIGHT_SECONDS"), base.night()),
+                    seconds(prefix + "DAY_SECONDS", properties.getProperty(prefix + "DAY_SECONDS"), base.day()),
+                    integer(prefix + "MIN_PLAYERS", properties.getProperty(prefix + "MIN_PLAYERS"), base.minPlayers())));
+        }
+        return new BotConfig(config.startup, config.defaults, Map.copyOf(chats), config.inboundPerSecond, config.inboundBurst,
+                config.lobbyTtl, config.maxLobbies);
+    }
+
+    private static BotConfig load(Source source) {
+        Startup startup = new Startup(
+                source.get("BOT_TOKEN"),
+                string(source, "BOT_MODE", "polling"),
+                Path.of(string(source, "JOURNAL_DIR", "data")),
+                integer(source, "METRICS_PORT", 9091),
+                string(source, "METRICS_BIND", ""),
+                integer(source, "SHUTDOWN_TIMEOUT_SECONDS", 8),
+                string(source, "WEBHOOK_URL", ""),
+                string(source, "WEBHOOK_PATH", "/webhook"),
+                string(source, "WEBHOOK_SECRET", ""),
+                integer(source, "PORT", 8080),
+                string(source, "INGRESS_LISTEN", "/tmp/mafia-ingress.sock"),
+                string(source, "INGRESS_ADDRESS", "/tmp/mafia-ingress.sock"),
+                string(source, "WORKER_ID", "worker-1"),
+                string(source, "LOG_LEVEL", "debug"));
+        // Публичный webhook без секрета принимает поддельные апдейты от любого, кто узнал адрес
+        if ("webhook".equalsIgnoreCase(startup.botMode()) && !startup.webhookUrl().isEmpty() && startup.webhookSecret().isEmpty()) {
+            throw new IllegalArgumentException("WEBHOOK_SECRET is required when WEBHOOK_URL is set");
+        }
+        ChatRules defaults = new ChatRules(
+                seconds("NIGHT_SECONDS", source.get("NIGHT_SECONDS"), Duration.ofSeconds(40)),
+                seconds("DAY_SECONDS", source.get("DAY_SECONDS"), Duration.ofSeconds(40)),
+                integer(source, "MIN_PLAYERS", 4));
+        int perSecond = integer(source, "INBOUND_PER_SECOND", 3);
+        int burst = integer(source, "INBOUND_BURST", 5);
+        if (perSecond < 1 || burst < 1) {
+            throw new IllegalArgumentException("INBOUND_PER_SECOND and INBOUND_BURST must be positive");
+        }
+        // Лобби, где так и не начали игру, держат игроков и память — закрываются по простою и сверх лимита
+        int lobbyTtlMinutes = integer(source, "LOBBY_TTL_MINUTES", 30);
+        int maxLobbies = integer(source, "MAX_LOBBIES", 10_000);
+        if (lobbyTtlMinutes < 1 || maxLobbies < 1) {
+            throw new IllegalArgumentException("LOBBY_TTL_MINUTES and MAX_LOBBIES must be positive");
+        }
+        return new BotConfig(startup, defaults, Map.of(), perSecond, burst, Duration.ofMinutes(lobbyTtlMinutes), maxLobbies);
+    }
+
+    private interface Source {
+        String get(String key);
+    }
+
+    private static String string(Source source, String key, String defaultValue) {
+        String value = source.get(key);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    private static int integer(Source source, String key, int defaultValue) {
+        return integer(key, source.get(key), defaultValue);
+    }
+
+    private static int integer(String key, String value, int defaultValue) {
+        if (value == null || value.isBlank()) return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be a number, got '" + value + "'");
+        }
+    }
+
+    private static Duration seconds(String key, String value, Duration defaultValue) {
+        if (value == null || value.isBlank()) return defaultValue;
+        return Duration.ofSeconds(integer(key, value, 0));
+    }
+}
@@ -0,0 +1,68 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Задачи с одним ключом (чат или игра) выполняются строго по очереди, разные ключи — параллельно на виртуальных потоках
+public class ChatMailboxes {
+    private static final Logger log = LoggerFactory.getLogger(Main.class);
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ConcurrentHashMap<Long, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    public void execute(long key, Runnable task) {
+        Mailbox mailbox = mailboxes.compute(key, (k, m) -> {
+            if (m == null) m = new Mailbox(k);
+            m.tasks.add(task);
+            return m;
+        });
+        mailbox.schedule();
+    }
+
+    public int getMailboxCount() {
+        return mailboxes.size();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private class Mailbox implements Runnable {
+        private final long key;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Mailbox(long key) {
+            this.key = key;
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.error("Task failed for chat {}", key, e);
+                }
+            }
+            scheduled.set(false);
+            if (!tasks.isEmpty()) {
+                schedule();
+            } else {
+                mailboxes.computeIfPresent(key, (k, m) -> m.tasks.isEmpty() && !m.scheduled.get() ? null : m);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+// Размыкается после threshold неудачных отправок подряд (сеть, 5xx) и на cooldown перестаёт пускать запросы к API.
+// Потом пропускает одну пробную отправку: успех замыкает цепь, неудача размыкает её снова
+public class CircuitBreaker {
+    private static final Logger log = LoggerFactory.getLogger(Main.class);
+    private static final long PROBE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final int threshold;
+    private final long cooldownNanos;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private boolean probing;
+
+    public CircuitBreaker(int threshold, long cooldown, TimeUnit unit) {
+        this.threshold = threshold;
+        this.cooldownNanos = unit.toNanos(cooldown);
+    }
+
+    // true — можно отправлять; в полуоткрытом состоянии пускает только одну пробу
+    public synchronized boolean tryAcquire(long nowNanos) {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (nowNanos - openedAt < cooldownNanos) return false;
+                state = State.HALF_OPEN;
+                probing = true;
+                return true;
+            default:
+                if (probing) return false;
+                probing = true;
+                return true;
+        }
+    }
+
+    public synchronized long nanosUntilRetry(long nowNanos) {
+        return switch (state) {
+            case CLOSED -> 0;
+            case OPEN -> Math.max(0, openedAt + cooldownNanos - nowNanos);
+            case HALF_OPEN -> probing ? PROBE_WAIT_NANOS : 0;
+        };
+    }
+
+    // API ответило — даже ошибкой 4xx: связь есть
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("Telegram API is reachable again, circuit closed");
+        }
+        state = State.CLOSED;
+        failures = 0;
+        probing = false;
+    }
+
+    public synchronized void onFailure(long nowNanos) {
+        if (state == State.HALF_OPEN || ++failures >= threshold) {
+            if (state == State.CLOSED) {
+                log.warn("Telegram API failed {} times in a row, pausing sends for {} ms", failures,
+                        TimeUnit.NANOSECONDS.toMillis(cooldownNanos));
+            }
+            state = State.OPEN;
+            openedAt = nowNanos;
+            probing = false;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
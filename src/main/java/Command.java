@@ -0,0 +1,35 @@
+// Разобранная команда: тип из таблицы команд и границы аргумента в исходном тексте
+public record Command(Type type, String text, int argStart, int argEnd) {
+    public enum Type {
+        NEW("/new"), JOIN("/join"), START("/start"),
+        KILL("/kill"), SAVE("/save"), CHECK("/check"),
+        VOTE("/vote"), MESSAGE("/message"), REVEAL("/reveal"),
+        ROLES("/roles"), TEAM("/team"), STATS("/stats"), TOP("/top"),
+        UNKNOWN(null), // незнакомая нам команда
+        FOREIGN(null), // команда с @именем другого бота
+        TEXT(null); // обычный текст
+
+        private final String name;
+
+        Type(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getLabel() {
+            return name != null ? name : name().toLowerCase();
+        }
+    }
+
+    public boolean hasArgument() {
+        return argEnd > argStart;
+    }
+
+    // Аргумент копируется только когда он действительно нужен обработчику
+    public String argument() {
+        return text.substring(argStart, argEnd);
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.Arrays;
+
+// Разбор входящего текста за один проход: префиксное дерево по именам команд без учёта регистра,
+// суффикс @ИмяБота и границы аргумента без split/substring/toLowerCase
+public class CommandParser {
+    private static final int ALPHABET = 'z' - 'a' + 1;
+
+    private final String botUsername;
+    private int[][] children = new int[8][];
+    private Command.Type[] terminals = new Command.Type[8];
+    private int nodes = 1;
+
+    public CommandParser(String botUsername) {
+        this.botUsername = botUsername;
+        children[0] = new int[ALPHABET];
+        for (Command.Type type : Command.Type.values()) {
+            if (type.getName() != null) insert(type.getName(), type);
+        }
+    }
+
+    public Command parse(String text) {
+        int length = text.length();
+        if (length == 0 || text.charAt(0) != '/') {
+            return new Command(Command.Type.TEXT, text, 0, length);
+        }
+
+        int i = 1;
+        int node = 0;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '@' || Character.isWhitespace(c)) break;
+            if (node < 0) continue;
+            int letter = (c | 0x20) - 'a'; // ASCII в нижний регистр
+            node = letter >= 0 && letter < ALPHABET && children[node] != null && children[node][letter] != 0
+                    ? children[node][letter] : -1;
+        }
+        Command.Type type = node > 0 && terminals[node] != null ? terminals[node] : Command.Type.UNKNOWN;
+
+        if (i < length && text.charAt(i) == '@') {
+            int mentionStart = ++i;
+            while (i < length && !Character.isWhitespace(text.charAt(i))) i++;
+            if (i - mentionStart != botUsername.length()
+                    || !text.regionMatches(true, mentionStart, botUsername, 0, botUsername.length())) {
+                type = Command.Type.FOREIGN;
+            }
+        }
+
+        while (i < length && Character.isWhitespace(text.charAt(i))) i++;
+        int end = length;
+        while (end > i && Character.isWhitespace(text.charAt(end - 1))) end--;
+        return new Command(type, text, i, end);
+    }
+
+    private void insert(String name, Command.Type type) {
+        int node = 0;
+        for (int i = 1; i < name.length(); i++) {
+            int letter = name.charAt(i) - 'a';
+            if (children[node] == null) children[node] = new int[ALPHABET];
+            if (children[node][letter] == 0) {
+                if (nodes == terminals.length) grow();
+                children[node][letter] = nodes++;
+            }
+            node = children[node][letter];
+        }
+        terminals[node] = type;
+    }
+
+    private void grow() {
+        children = Arrays.copyOf(children, nodes * 2);
+        terminals = Arrays.copyOf(terminals, nodes * 2);
+    }
+}
@@ -0,0 +1,91 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+
+// Держит текущий снимок настроек и целиком подменяет его, когда меняется файл конфигурации.
+// Горячие пути читают только volatile-ссылку; битый файл не применяется, остаётся прежний снимок
+public class ConfigWatcher {
+    private static final Logger log = LoggerFactory.getLogger(Main.class);
+    private static final long SETTLE_MILLIS = 200; // редакторы пишут файл в несколько приёмов
+
+    private final Path file;
+    private volatile BotConfig current;
+    private WatchService watcher;
+
+    public ConfigWatcher(BotConfig initial, Path file) {
+        this.current = initial;
+        this.file = file;
+    }
+
+    public BotConfig get() {
+        return current;
+    }
+
+    public void start() throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        watcher = dir.getFileSystem().newWatchService();
+        dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        Thread thread = new Thread(this::watchLoop, "config-watch");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Watching {} for configuration changes", file);
+    }
+
+    public void stop() {
+        try {
+            if (watcher != null) watcher.close();
+        } catch (IOException e) {
+            log.debug("Cannot close config watcher: {}", e.getMessage());
+        }
+    }
+
+    public void reload() {
+        try {
+            BotConfig next = BotConfig.load(file);
+            BotConfig previous = current;
+            if (!next.startup().equals(previous.startup())) {
+                log.warn("Token, mode, ports, paths and log level in {} apply only after a restart", file);
+            }
+            current = new BotConfig(previous.startup(), next.defaults(), next.chats(), next.inboundPerSecond(), next.inboundBurst(),
+                    next.lobbyTtl(), next.maxLobbies());
+            log.info("Configuration reloaded: night {} s, day {} s, min {} players, {} chat overrides",
+                    next.defaults().night().toSeconds(), next.defaults().day().toSeconds(),
+                    next.defaults().minPlayers(), next.chats().size());
+        } catch (IOException | RuntimeException e) {
+            log.error("Cannot reload {}, keeping the previous configuration: {}", file, e.getMessage());
+        }
+    }
+
+    private void watchLoop() {
+        Path name = file.getFileName();
+        while (true) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            boolean changed = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                changed |= name.equals(event.context());
+            }
+            key.reset();
+            if (!changed) continue;
+            try {
+                Thread.sleep(SETTLE_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            // События, накопившиеся за паузу, покрываются этой же перечиткой
+            WatchKey pending;
+            while ((pending = watcher.poll()) != null) {
+                pending.pollEvents();
+                pending.reset();
+            }
+            reload();
+        }
+    }
+}
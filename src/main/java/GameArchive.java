@@ -0,0 +1,298 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Бессрочный архив событий всех игр в компактном бинарном виде — для воспроизведения партий офлайн.
+// Файл: "MAFA", версия, время начала (epoch ms), затем записи:
+// varint Δms от прошлой записи, zigzag-varint gameChatId, байт типа, поля события varint'ами
+public class GameArchive implements GameEventSink {
+    private static final Logger log = LoggerFactory.getLogger(Main.class);
+    private static final byte[] MAGIC = {'M', 'A', 'F', 'A'};
+    private static final int VERSION = 1;
+    private static final String FILE_PREFIX = "archive-";
+    private static final String FILE_SUFFIX = ".bin";
+    private static final long ROTATE_BYTES = 64L << 20;
+    private static final long FLUSH_MILLIS = 200;
+
+    private static final byte JOINED = 1, QUOTA = 2, ROLES = 3, NIGHT = 4, VOTE = 5, REVEAL = 6, WORDS = 7,
+            NIGHT_END = 8, DAY_END = 9, PHASE = 10, DIED = 11, REMOVED = 12;
+
+    public interface Reader {
+        void accept(long timeMillis, long gameChatId, GameEvent event);
+    }
+
+    private final Path dir;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "archive-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    private byte[] buffer = new byte[64 << 10]; // guarded by this
+    private int length;
+    private byte[] spare = new byte[64 << 10];
+    private long lastMillis;
+    private long chunkBaseMillis; // время, от которого считается Δ первой записи в буфере
+    private FileChannel channel; // только поток записи
+    private long fileBytes;
+
+    public GameArchive(Path dir) {
+        this.dir = dir;
+    }
+
+    public void open() throws IOException {
+        Files.createDirectories(dir);
+        writer.scheduleWithFixedDelay(this::flush, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // На горячем пути только кодирование в буфер под коротким локом; на диск пишет отдельный поток
+    @Override
+    public synchronized long record(long gameChatId, GameEvent event) {
+        long now = System.currentTimeMillis();
+        if (lastMillis == 0) {
+            lastMillis = now;
+        }
+        if (length == 0) {
+            chunkBaseMillis = lastMillis;
+        }
+        ensure(64);
+        putVarint(Math.max(0, now - lastMillis));
+        lastMillis = now;
+        putVarint(zigzag(gameChatId));
+        switch (event) {
+            case GameEvent.Joined e -> {
+                put(JOINED);
+                putVarint(zigzag(e.userId()));
+                byte[] name = e.username() == null ? new byte[0] : e.username().getBytes(StandardCharsets.UTF_8);
+                putVarint(name.length);
+                ensure(name.length);
+                System.arraycopy(name, 0, buffer, length, name.length);
+                length += name.length;
+            }
+            case GameEvent.QuotaSet e -> {
+                put(QUOTA);
+                putQuota(e.quota());
+            }
+            case GameEvent.RolesAssigned e -> {
+                put(ROLES);
+                putVarint(e.order().length);
+                ensure(e.order().length * 10 + 40);
+                for (long userId : e.order()) putVarint(zigzag(userId));
+                putQuota(e.quota());
+                putVarint(zigzag(e.seed()));
+            }
+            case GameEvent.NightActed e -> putPair(NIGHT, e.actorId(), e.targetId());
+            case GameEvent.Voted e -> putPair(VOTE, e.voterId(), e.targetId());
+            case GameEvent.Revealed e -> putUser(REVEAL, e.userId());
+            case GameEvent.LastWords e -> putUser(WORDS, e.userId());
+            case GameEvent.NightResolved e -> put(NIGHT_END);
+            case GameEvent.DayResolved e -> put(DAY_END);
+            case GameEvent.PhaseStarted e -> {
+                put(PHASE);
+                put((byte) e.state().ordinal());
+                putVarint(zigzag(e.deadlineMillis()));
+            }
+            case GameEvent.Died e -> putUser(DIED, e.userId());
+            case GameEvent.Removed e -> put(REMOVED);
+        }
+        return 0;
+    }
+
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        try {
+            if (channel != null) {
+                channel.force(false);
+                channel.close();
+            }
+        } catch (IOException e) {
+            log.error("Cannot close game archive", e);
+        }
+    }
+
+    private void flush() {
+        byte[] chunk;
+        int chunkLength;
+        long chunkStart;
+        synchronized (this) {
+            if (length == 0) return;
+            chunk = buffer;
+            chunkLength = length;
+            buffer = spare;
+            length = 0;
+            chunkStart = chunkBaseMillis;
+        }
+        try {
+            if (channel == null || fileBytes >= ROTATE_BYTES) {
+                rotate(chunkStart);
+            }
+            ByteBuffer data = ByteBuffer.wrap(chunk, 0, chunkLength);
+            while (data.hasRemaining()) {
+                fileBytes += channel.write(data);
+            }
+        } catch (IOException e) {
+            log.error("Game archive write failed", e);
+        } finally {
+            synchronized (this) {
+                spare = chunk;
+            }
+        }
+    }
+
+    // Новый файл начинается с заголовка, а Δ первой записи считается от времени в заголовке
+    private void rotate(long startMillis) throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+        }
+        Path file = dir.resolve(FILE_PREFIX + System.currentTimeMillis() + FILE_SUFFIX);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 1 + Long.BYTES);
+        header.put(MAGIC).put((byte) VERSION).putLong(startMillis).flip();
+        fileBytes = channel.write(header);
+    }
+
+    public static List<Path> listFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> {
+                        String name = p.getFileName().toString();
+                        return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    // Читает файл архива; оборванная последняя запись (падение процесса) пропускается
+    public static long read(Path file, Reader reader) throws IOException {
+        long events = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readByte() != VERSION) {
+                throw new IOException("Not a game archive: " + file);
+            }
+            long time = in.readLong();
+            while (true) {
+                long delta;
+                try {
+                    delta = readVarint(in);
+                } catch (EOFException e) {
+                    break;
+                }
+                try {
+                    time += delta;
+                    long gameChatId = unzigzag(readVarint(in));
+                    reader.accept(time, gameChatId, readEvent(in));
+                    events++;
+                } catch (EOFException e) {
+                    log.warn("Truncated record at the end of {}", file);
+                    break;
+                }
+            }
+        }
+        return events;
+    }
+
+    private static GameEvent readEvent(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        return switch (type) {
+            case JOINED -> {
+                long userId = unzigzag(readVarint(in));
+                byte[] name = new byte[(int) readVarint(in)];
+                in.readFully(name);
+                yield new GameEvent.Joined(userId, name.length == 0 ? null : new String(name, StandardCharsets.UTF_8));
+            }
+            case QUOTA -> new GameEvent.QuotaSet(readQuota(in));
+            case ROLES -> {
+                long[] order = new long[(int) readVarint(in)];
+                for (int i = 0; i < order.length; i++) order[i] = unzigzag(readVarint(in));
+                RoleQuota quota = readQuota(in);
+                yield new GameEvent.RolesAssigned(order, quota, unzigzag(readVarint(in)));
+            }
+            case NIGHT -> new GameEvent.NightActed(unzigzag(readVarint(in)), unzigzag(readVarint(in)));
+            case VOTE -> new GameEvent.Voted(unzigzag(readVarint(in)), unzigzag(readVarint(in)));
+            case REVEAL -> new GameEvent.Revealed(unzigzag(readVarint(in)));
+            case WORDS -> new GameEvent.LastWords(unzigzag(readVarint(in)));
+            case NIGHT_END -> new GameEvent.NightResolved();
+            case DAY_END -> new GameEvent.DayResolved();
+            case PHASE -> new GameEvent.PhaseStarted(GameCore.GameState.values()[in.readByte()], unzigzag(readVarint(in)));
+            case DIED -> new GameEvent.Died(unzigzag(readVarint(in)));
+            case REMOVED -> new GameEvent.Removed();
+            default -> throw new IOException("Unknown archive record type " + type);
+        };
+    }
+
+    private void putPair(byte type, long first, long second) {
+        put(type);
+        putVarint(zigzag(first));
+        putVarint(zigzag(second));
+    }
+
+    private void putUser(byte type, long userId) {
+        put(type);
+        putVarint(zigzag(userId));
+    }
+
+    private void putQuota(RoleQuota quota) {
+        putVarint(quota.mafia());
+        putVarint(quota.doctors());
+        putVarint(quota.commissars());
+    }
+
+    private static RoleQuota readQuota(DataInputStream in) throws IOException {
+        return new RoleQuota((int) readVarint(in), (int) readVarint(in), (int) readVarint(in));
+    }
+
+    private void put(byte value) {
+        buffer[length++] = value;
+    }
+
+    private void putVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    private static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -1,37 +1,104 @@
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
 
 public class GameCore {
-    private List<Player> players = new ArrayList<>();
+    private final LobbyRoster lobby = new LobbyRoster(); // до раздачи ролей игроки — только id и ники
+    private final PlayerIndex players = new PlayerIndex();
     private GameState gameState = GameState.WAITING;
     private long gameChatId;
-    private final Map<Long, String> nightActions = new HashMap<>();
-    private final Map<Long, String> playerVotes = new HashMap<>(); // voterId → targetUsername
-    private final Map<String, Integer> voteCounts = new HashMap<>();
-    private Map<String, Integer> voteCountsSnapshot;
+    private final EnumMap<Role, LongMap<NightAction>> nightActions = new EnumMap<>(Role.class); // роль → actorId → ход
+    private final VoteTally mafiaVotes = new VoteTally(); // выбор жертвы большинством мафии
+    private final VoteTally votes = new VoteTally();
+    private Map<String, Integer> voteCountsSnapshot = Collections.emptyMap(); // username → count
 
-    Optional<Map.Entry<String, Integer>> maxEntry = voteCounts.entrySet()
-            .stream()
-            .max(Map.Entry.comparingByValue());// username → count
+    private final Set<Long> lastWordsSaid = new HashSet<>();
+    private long creatorId;
+    private long phaseDeadline; // epoch millis окончания текущей фазы
 
     private Player killedPlayer;
     private Player savedPlayer;
-    private Commissar commissar;
+    private RoleQuota roleQuota; // заданная в чате раздача; null — по размеру лобби
+    private RoleQuota assignedQuota;
+    private long shuffleSeed;
+    private int minPlayers = 4;
+    private long announcedDaySeconds;
+    private long[] mafiaTeam = new long[0];
+    private long mafiaTeamVersion = -1;
+
+    private GameEventSink events = GameEventSink.NONE;
+    private long lastEventSeq;
+
+    // Тексты для рассылки собираются один раз на версию состояния и отдаются всем получателям
+    private long stateVersion; // растёт при смене фазы и вскрытии комиссара
+    private final Rendered aliveList = new Rendered();
+    private final Rendered dayAnnouncement = new Rendered();
+    private final Rendered dayResults = new Rendered();
+    private final Rendered detailedResult = new Rendered();
+    private final Rendered mafiaRoster = new Rendered();
 
     public enum GameState {WAITING, NIGHT, DAY, ENDED}
 
-    public void addPlayer(Player player) {
+    private static final Role[] NIGHT_ROLES = {Role.MAFIA, Role.DOCTOR, Role.COMMISSAR};
+
+    public GameCore() {
+        for (Role role : NIGHT_ROLES) {
+            nightActions.put(role, new LongMap<>());
+        }
+    }
+
+    public void addPlayer(long userId, String username) {
         validateGameState(GameState.WAITING);
-        if (players.stream().anyMatch(p -> p.getUserId() == player.getUserId())) {
-            throw new IllegalArgumentException(player.getUsername() + ", ты уже в игре!");
+        if (!lobby.add(userId, username)) {
+            throw new IllegalArgumentException(username + ", ты уже в игре!");
         }
-        players.add(player);
+        if (lobby.size() == 1) {
+            creatorId = userId;
+        }
+        record(new GameEvent.Joined(userId, username));
     }
 
     public void startGame() {
+        startGame(ThreadLocalRandom.current().nextLong());
+    }
+
+    // Зерно пишется в журнал вместе с порядком, так что раздачу можно воспроизвести
+    public void startGame(long seed) {
         validatePlayersCount();
-        assignRoles();
-        gameState = GameState.NIGHT;
+        long[] order = shuffledOrder(seed);
+        startGame(order, roleQuota != null ? roleQuota : RoleQuota.forLobby(order.length), seed);
+    }
+
+    // Те же перестановки, что Collections.shuffle над списком лобби, — старые зёрна из архива воспроизводятся
+    public long[] shuffledOrder(long seed) {
+        long[] order = lobby.ids();
+        Random random = new Random(seed);
+        for (int i = order.length; i > 1; i--) {
+            int j = random.nextInt(i);
+            long swap = order[i - 1];
+            order[i - 1] = order[j];
+            order[j] = swap;
+        }
+        return order;
+    }
+
+    // Раздача ролей по заданному порядку игроков и квоте — так же игра поднимается из журнала
+    public void startGame(long[] order, RoleQuota quota, long seed) {
+        quota.validate(order.length);
+        assignRoles(order, quota);
+        shuffleSeed = seed;
+        enter(GameState.NIGHT);
+        record(new GameEvent.RolesAssigned(order, quota, seed));
+    }
+
+    public void setRoleQuota(RoleQuota quota) {
+        validateGameState(GameState.WAITING);
+        roleQuota = quota;
+        record(new GameEvent.QuotaSet(quota));
+    }
+
+    public RoleQuota getRoleQuota() {
+        return roleQuota;
     }
 
 
@@ -45,13 +112,14 @@ public class GameCore {
         handleDoctorAction();
         handleCommissarAction();
         applyNightResults();
-        nightActions.clear();
+        clearNightActions();
 
         checkWinConditions();
 
         if (gameState != GameState.ENDED) {
-            gameState = GameState.DAY;
+            enter(GameState.DAY);
         }
+        record(new GameEvent.NightResolved());
     }
 
     void applyNightResults() {
@@ -68,56 +136,70 @@ public class GameCore {
     }
 
     public void addVote(Long voterId, String targetUsername) {
+        Player target = findPlayerByName(targetUsername);
+        if (target != null) {
+            addVote(voterId, target.getUserId());
+        }
+    }
+
+    public void addVote(long voterId, long targetId) {
         if (gameState != GameState.DAY) return;
 
         Player voter = findPlayerById(voterId);
         if (voter == null || !voter.isAlive()) return;
 
-        String normalizedTarget = targetUsername.trim().toLowerCase();
-        if (playerVotes.containsKey(voterId)) {
-            String prevVote = playerVotes.get(voterId);
-            voteCounts.compute(prevVote, (k, v) -> (v == null || v <= 1) ? null : v - 1);
-        }
-        playerVotes.put(voterId, normalizedTarget);
-        voteCounts.put(normalizedTarget, voteCounts.getOrDefault(normalizedTarget, 0) + 1);
+        Player target = findPlayerById(targetId);
+        if (target == null || !target.isAlive()) return;
+        votes.vote(voterId, target);
+        record(new GameEvent.Voted(voterId, targetId));
     }
 
     public void resolveDayVoting() {
         killedPlayer = null;
-        voteCounts.clear();
-        for (String username : playerVotes.values()) {
-            voteCounts.put(username, voteCounts.getOrDefault(username, 0) + 1);
-        }
-        if (!voteCounts.isEmpty()) {
-            int maxVotes = Collections.max(voteCounts.values());
-            List<String> candidates = voteCounts.entrySet().stream()
-                    .filter(e -> e.getValue() == maxVotes)
-                    .map(Map.Entry::getKey)
-                    .collect(Collectors.toList());
-
-
-            if (candidates.size() == 1) {
-                String targetUsername = candidates.get(0);
-                Player target = findPlayerByName(targetUsername);
-                if (target != null && target.isAlive()) {
-                    target.setAlive(false);
-                    killedPlayer = target;
-                }
-            }
+        Player target = votes.getLeader();
+        if (target != null && target.isAlive()) {
+            target.setAlive(false);
+            killedPlayer = target;
         }
-        voteCountsSnapshot = new HashMap<>(voteCounts);
-        playerVotes.clear();
+        voteCountsSnapshot = new LinkedHashMap<>(votes.getCounts());
+        votes.clear();
 
         checkWinConditions();
         if (gameState != GameState.ENDED) {
-            gameState = GameState.NIGHT;
+            enter(GameState.NIGHT);
         }
+        record(new GameEvent.DayResolved());
     }
+    // Фазу можно закрыть досрочно: все живые ночные роли походили, либо исход голосования уже ясен
+    public boolean isPhaseComplete() {
+        return switch (gameState) {
+            case NIGHT -> isNightComplete();
+            case DAY -> isDayComplete();
+            default -> false;
+        };
+    }
+
+    private boolean isNightComplete() {
+        for (Role role : NIGHT_ROLES) {
+            if (nightActions.get(role).size() < players.aliveCount(role)) return false;
+        }
+        return true;
+    }
+
+    // Только строгое большинство: пока его нет, голоса ещё могут переиграть исход, в том числе ничью
+    private boolean isDayComplete() {
+        return votes.getMaxVotes() * 2 > players.aliveCount();
+    }
+
     public Map<String, Integer> getVotesSnapshot() {
         return voteCountsSnapshot;
     }
     public Map<String, Integer> getVotes() {
-        return Collections.unmodifiableMap(voteCounts);
+        return votes.getCounts();
+    }
+
+    public VoteTally getVoteTally() {
+        return votes;
     }
     private void validateGameState(GameState requiredState) {
         if (gameState != requiredState) {
@@ -126,50 +208,94 @@ public class GameCore {
     }
 
     private void validatePlayersCount() {
-        if (players.size() < 4) {
-            throw new IllegalStateException("Необходимо минимум 4 игрока!");
+        if (lobby.size() < minPlayers) {
+            throw new IllegalStateException("Нужно игроков: не меньше " + minPlayers + "!");
         }
     }
 
-    private void assignRoles() {
-        Collections.shuffle(players);
-        List<Player> newPlayers = new ArrayList<>();
-        newPlayers.add(new Mafia(players.get(0).getUserId(), players.get(0).getUsername()));
-        newPlayers.add(new Doctor(players.get(1).getUserId(), players.get(1).getUsername()));
-        commissar = new Commissar(players.get(2).getUserId(), players.get(2).getUsername());
-        newPlayers.add(commissar);
-
-        for (int i = 3; i < players.size(); i++) {
-            newPlayers.add(new Civilian(players.get(i).getUserId(), players.get(i).getUsername()));
+    // Первые quota.mafia() по порядку — мафия, затем доктора, комиссары, остальные — мирные
+    private void assignRoles(long[] order, RoleQuota quota) {
+        if (order.length != lobby.size()) {
+            throw new IllegalArgumentException("Порядок раздачи не совпадает с составом лобби");
         }
-
-        players = newPlayers;
+        int doctorsFrom = quota.mafia();
+        int commissarsFrom = doctorsFrom + quota.doctors();
+        int civiliansFrom = commissarsFrom + quota.commissars();
+        List<Player> newPlayers = new ArrayList<>(order.length);
+        for (int i = 0; i < order.length; i++) {
+            int at = lobby.indexOf(order[i]);
+            if (at < 0) {
+                throw new IllegalArgumentException("Порядок раздачи не совпадает с составом лобби");
+            }
+            String username = lobby.nameAt(at);
+            if (i < doctorsFrom) newPlayers.add(new Mafia(order[i], username));
+            else if (i < commissarsFrom) newPlayers.add(new Doctor(order[i], username));
+            else if (i < civiliansFrom) newPlayers.add(new Commissar(order[i], username));
+            else newPlayers.add(new Civilian(order[i], username));
+        }
+        this.players.replaceAll(newPlayers);
+        lobby.clear();
+        assignedQuota = quota;
     }
 
+    // Жертва — за кого больше всего голосов мафии; при равенстве мафия никого не убивает
     private void handleMafiaAction() {
-        nightActions.entrySet().stream().filter(e -> e.getValue().startsWith("MAFIA ")).findFirst().ifPresent(action -> {
-            long targetId = Long.parseLong(action.getValue().split(" ")[1]);
-            killedPlayer = findPlayerById(targetId);
-        });
+        killedPlayer = mafiaVotes.getLeader();
     }
 
+    // Спасён, если хоть один доктор лечил жертву мафии
     private void handleDoctorAction() {
-        nightActions.entrySet().stream().filter(e -> e.getValue().startsWith("DOCTOR ")).findFirst().ifPresent(action -> {
-            long targetId = Long.parseLong(action.getValue().split(" ")[1]);
-            savedPlayer = findPlayerById(targetId);
+        nightActions.get(Role.DOCTOR).forEach((actorId, action) -> {
+            Player target = findPlayerById(action.targetId());
+            if (savedPlayer == null || target == killedPlayer) savedPlayer = target;
         });
     }
 
     private void handleCommissarAction() {
-        nightActions.entrySet().stream().filter(e -> e.getValue().startsWith("COMMISSAR ")).findFirst().ifPresent(action -> {
-            long targetId = Long.parseLong(action.getValue().split(" ")[1]);
-            Player target = findPlayerById(targetId);
-            commissar.performNightAction(target);
+        nightActions.get(Role.COMMISSAR).forEach((actorId, action) -> {
+            if (findPlayerById(actorId) instanceof Commissar c) {
+                c.performNightAction(findPlayerById(action.targetId()));
+            }
         });
     }
 
+    private void clearNightActions() {
+        for (LongMap<NightAction> actions : nightActions.values()) {
+            actions.clear();
+        }
+        mafiaVotes.clear();
+    }
+
+    // id живой мафии; пересобирается только при смене версии состояния
+    public long[] getMafiaTeam() {
+        long version = getStateVersion();
+        if (version != mafiaTeamVersion) {
+            mafiaTeam = players.asList().stream()
+                    .filter(p -> p.getRole() == Role.MAFIA && p.isAlive())
+                    .mapToLong(Player::getUserId)
+                    .toArray();
+            mafiaTeamVersion = version;
+        }
+        return mafiaTeam;
+    }
+
+    public String getMafiaRoster() {
+        return render(mafiaRoster, () -> {
+            StringBuilder sb = new StringBuilder();
+            for (long userId : getMafiaTeam()) {
+                if (!sb.isEmpty()) sb.append(", ");
+                sb.append(findPlayerById(userId).getUsername());
+            }
+            return sb.toString();
+        });
+    }
+
+    public Player getMafiaChoice() {
+        return mafiaVotes.getLeader();
+    }
+
     private void checkWinConditions() {
-        long totalAlive = players.stream().filter(Player::isAlive).count();
+        long totalAlive = players.aliveCount();
         long mafiaAlive = countAliveByRole(Role.MAFIA);
         long civiliansAlive = totalAlive - mafiaAlive;
 
@@ -184,32 +310,103 @@ public class GameCore {
 
     public String getDetailedGameResult() {
         if (gameState != GameState.ENDED) return "";
+        return render(detailedResult, this::buildDetailedGameResult);
+    }
 
+    private String buildDetailedGameResult() {
         StringBuilder sb = new StringBuilder("\n\n🏁 ИГРА ОКОНЧЕНА!\n");
         sb.append(countAliveByRole(Role.MAFIA) == 0 ? "🟢 ПОБЕДА МИРНЫХ!\n" : "🔴 ПОБЕДА МАФИИ!\n");
 
         sb.append("\nУчастники:\n");
-        for (Player p : players) {
+        for (Player p : players.asList()) {
             sb.append(p.getUsername()).append(" - ").append(p.getRole().getDisplayName()).append(p.isAlive() ? " (выжил)" : " (погиб)").append("\n");
         }
 
         return sb.toString();
     }
 
-    public Player findPlayerById(Long userId) {
-        return players.stream().filter(p -> p.getUserId() == userId).findFirst().orElse(null);
+    public Player findPlayerById(long userId) {
+        return players.get(userId);
     }
 
     public Player findPlayerByName(String name) {
-        String normalized = name.trim().toLowerCase();
-        return players.stream()
-                .filter(p -> p.getUsername().toLowerCase().equals(normalized))
-                .findFirst()
-                .orElse(null);
+        return players.findByName(name);
     }
 
     public String getAlivePlayersList() {
-        return players.stream().filter(Player::isAlive).map(Player::getUsername).collect(Collectors.joining("\n"));
+        return render(aliveList, this::buildAlivePlayersList);
+    }
+
+    private String buildAlivePlayersList() {
+        StringBuilder sb = new StringBuilder();
+        for (Player p : players.asList()) {
+            if (!p.isAlive()) continue;
+            if (!sb.isEmpty()) sb.append('\n');
+            sb.append(p.getUsername());
+        }
+        return sb.toString();
+    }
+
+    public String getDayAnnouncement(long daySeconds) {
+        if (daySeconds != announcedDaySeconds) {
+            announcedDaySeconds = daySeconds;
+            dayAnnouncement.text = null;
+        }
+        return render(dayAnnouncement, this::buildDayAnnouncement);
+    }
+
+    private String buildDayAnnouncement() {
+        StringBuilder sb = new StringBuilder("☀️ День начался! Обсуждение (" + announcedDaySeconds + " сек):\n")
+                .append("Живые игроки:\n").append(getAlivePlayersList())
+                .append("\n\nГолосовать: /vote [ник]")
+                .append("\nАнонимное сообщение: /message [текст]");
+        for (Player p : players.asList()) {
+            if (p instanceof Commissar c && c.isAlive() && !c.isRevealed()) {
+                sb.append("\n\nКомиссар может вскрыться: /reveal");
+                break;
+            }
+        }
+        return sb.toString();
+    }
+
+    // Итоги последнего голосования; собираются заново только после следующего resolveDayVoting
+    public String getDayResults() {
+        return render(dayResults, this::buildDayResults);
+    }
+
+    private String buildDayResults() {
+        StringBuilder sb = new StringBuilder("🗳 Результаты голосования:\n");
+        voteCountsSnapshot.forEach((player, count) -> sb.append("• ").append(player).append(": ").append(count).append(" голосов\n"));
+        if (killedPlayer != null) {
+            sb.append("\n☠️ Линчеван: ").append(killedPlayer.getUsername());
+        } else if (!voteCountsSnapshot.isEmpty()) {
+            sb.append("\n⏭ Ничья! Никто не линчеван");
+        } else {
+            sb.append("\n🗣️ Никто не голосовал");
+        }
+        return sb.toString();
+    }
+
+    public long getStateVersion() {
+        return players.getVersion() + stateVersion;
+    }
+
+    private String render(Rendered slot, Supplier<String> builder) {
+        long version = getStateVersion();
+        if (slot.version != version || slot.text == null) {
+            slot.text = builder.get();
+            slot.version = version;
+        }
+        return slot.text;
+    }
+
+    private static final class Rendered {
+        private long version;
+        private String text;
+    }
+
+    public boolean isMafiaWin() {
+        return gameState == GameState.ENDED && countAliveByRole(Role.MAFIA) > 0;
     }
 
     public String getGameResult() {
@@ -217,41 +414,194 @@ public class GameCore {
     }
 
     private long countAliveByRole(Role role) {
-        return players.stream().filter(p -> p.isAlive() && p.getRole() == role).count();
+        return players.aliveCount(role);
     }
 
     public void reset() {
+        lobby.clear();
         players.clear();
-        nightActions.clear();
-        playerVotes.clear();
-        gameState = GameState.WAITING;
+        clearNightActions();
+        votes.clear();
+        lastWordsSaid.clear();
+        enter(GameState.WAITING);
+        creatorId = 0;
+        phaseDeadline = 0;
         killedPlayer = null;
         savedPlayer = null;
         gameChatId = 0;
-        commissar = null;
+        roleQuota = null;
+        assignedQuota = null;
+        shuffleSeed = 0;
     }
 
     public void endGame(String resultMessage) {
-        gameState = GameState.ENDED;
+        enter(GameState.ENDED);
     }
 
     public Player getPlayerById(long userId) {
-        return players.stream().filter(p -> p.getUserId() == userId).findFirst().orElse(null);
+        return players.get(userId);
     }
 
+    // Повторный ход той же роли за ночь заменяет предыдущий: действует последний выбор
     public void processNightAction(Player actor, Player target) {
-        if (gameState != GameState.NIGHT) return;
+        if (gameState != GameState.NIGHT || actor.getRole() == Role.CIVILIAN) return;
+
+        nightActions.get(actor.getRole()).put(actor.getUserId(), new NightAction(actor.getUserId(), target.getUserId()));
+        if (actor.getRole() == Role.MAFIA) mafiaVotes.vote(actor.getUserId(), target);
+        record(new GameEvent.NightActed(actor.getUserId(), target.getUserId()));
+    }
+
+    public void revealCommissar(Commissar commissar) {
+        commissar.reveal();
+        stateVersion++;
+        record(new GameEvent.Revealed(commissar.getUserId()));
+    }
+
+    // true, если игрок ещё не высказывался после смерти
+    public boolean recordLastWords(long userId) {
+        if (!lastWordsSaid.add(userId)) return false;
+        record(new GameEvent.LastWords(userId));
+        return true;
+    }
+
+    public boolean hasLastWords(long userId) {
+        return lastWordsSaid.contains(userId);
+    }
+
+    // Правило чата из настроек; проверяется только при живом старте, не при подъёме из журнала
+    public void setMinPlayers(int minPlayers) {
+        this.minPlayers = minPlayers;
+    }
+
+    public long getShuffleSeed() {
+        return shuffleSeed;
+    }
+
+    public long getCreatorId() {
+        return creatorId;
+    }
+
+    public void setPhaseDeadline(long deadlineMillis) {
+        this.phaseDeadline = deadlineMillis;
+        record(new GameEvent.PhaseStarted(gameState, deadlineMillis));
+    }
+
+    public long getPhaseDeadline() {
+        return phaseDeadline;
+    }
 
-        String action = actor.getRole().name() + " " + target.getUserId();
-        nightActions.put(actor.getUserId(), action);
+    public void setEventSink(GameEventSink events) {
+        this.events = events;
+    }
+
+    public long getLastEventSeq() {
+        return lastEventSeq;
+    }
+
+    public void setLastEventSeq(long seq) {
+        this.lastEventSeq = seq;
+    }
+
+    // Минимальная последовательность событий, воспроизводящая текущее состояние
+    public List<GameEvent> snapshotEvents() {
+        List<GameEvent> snapshot = new ArrayList<>();
+        if (gameState == GameState.WAITING) {
+            for (int i = 0; i < lobby.size(); i++) {
+                snapshot.add(new GameEvent.Joined(lobby.idAt(i), lobby.nameAt(i)));
+            }
+            if (roleQuota != null) snapshot.add(new GameEvent.QuotaSet(roleQuota));
+            return snapshot;
+        }
+        for (Player p : players.asList()) {
+            snapshot.add(new GameEvent.Joined(p.getUserId(), p.getUsername()));
+        }
+
+        snapshot.add(new GameEvent.RolesAssigned(players.asList().stream().mapToLong(Player::getUserId).toArray(), assignedQuota, shuffleSeed));
+        for (Player p : players.asList()) {
+            if (!p.isAlive()) snapshot.add(new GameEvent.Died(p.getUserId()));
+            if (p instanceof Commissar c && c.isRevealed()) snapshot.add(new GameEvent.Revealed(p.getUserId()));
+        }
+        for (Long userId : lastWordsSaid) {
+            snapshot.add(new GameEvent.LastWords(userId));
+        }
+        snapshot.add(new GameEvent.PhaseStarted(gameState, phaseDeadline));
+        for (LongMap<NightAction> actions : nightActions.values()) {
+            actions.forEach((actorId, action) -> snapshot.add(new GameEvent.NightActed(action.actorId(), action.targetId())));
+        }
+        votes.forEachVote((voterId, target) -> snapshot.add(new GameEvent.Voted(voterId, target.getUserId())));
+        return snapshot;
+    }
+
+    // Проигрывает событие из журнала; само событие повторно не журналируется
+    public void apply(GameEvent event) {
+        GameEventSink sink = events;
+        events = GameEventSink.NONE;
+        try {
+            switch (event) {
+                case GameEvent.Joined e -> addPlayer(e.userId(), e.username());
+                case GameEvent.QuotaSet e -> setRoleQuota(e.quota());
+                case GameEvent.RolesAssigned e -> startGame(e.order(), e.quota(), e.seed());
+                case GameEvent.NightActed e -> {
+                    Player actor = findPlayerById(e.actorId());
+                    Player target = findPlayerById(e.targetId());
+                    if (actor != null && target != null) processNightAction(actor, target);
+                }
+                case GameEvent.Voted e -> addVote(e.voterId(), e.targetId());
+                case GameEvent.Revealed e -> {
+                    if (findPlayerById(e.userId()) instanceof Commissar c) {
+                        c.reveal();
+                        stateVersion++;
+                    }
+                }
+                case GameEvent.LastWords e -> lastWordsSaid.add(e.userId());
+                case GameEvent.NightResolved e -> resolveNightActions();
+                case GameEvent.DayResolved e -> resolveDayVoting();
+                case GameEvent.PhaseStarted e -> {
+                    enter(e.state());
+                    phaseDeadline = e.deadlineMillis();
+                }
+                case GameEvent.Died e -> {
+                    Player p = findPlayerById(e.userId());
+                    if (p != null) p.setAlive(false);
+                }
+                case GameEvent.Removed e -> enter(GameState.ENDED);
+            }
+        } finally {
+            events = sink;
+        }
+    }
+
+    // Событие игры, переехавшей с другого воркера: применяется и журналируется здесь заново
+    public void adopt(GameEvent event) {
+        apply(event);
+        record(event);
+    }
+
+    private void record(GameEvent event) {
+        long seq = events.record(gameChatId, event);
+        if (seq > 0) lastEventSeq = seq;
     }
 
     public GameState getGameState() {
         return gameState;
     }
 
+    // До раздачи ролей пуст: состав лобби — в getPlayerIds
     public List<Player> getPlayers() {
-        return Collections.unmodifiableList(players);
+        return players.asList();
+    }
+
+    public long[] getPlayerIds() {
+        if (gameState == GameState.WAITING) return lobby.ids();
+        long[] ids = new long[players.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = players.asList().get(i).getUserId();
+        }
+        return ids;
+    }
+
+    public int getPlayerCount() {
+        return gameState == GameState.WAITING ? lobby.size() : players.size();
     }
 
     public Player getKilledPlayer() {
@@ -261,6 +611,11 @@ public class GameCore {
         return savedPlayer;
     }
     public void setGameState(GameState state) {
-        this.gameState = state;
+        enter(state);
+    }
+
+    private void enter(GameState state) {
+        gameState = state;
+        stateVersion++;
     }
 }
\ No newline at end of file
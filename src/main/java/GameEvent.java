@@ -0,0 +1,28 @@
+// Переходы состояния игры, которые пишутся в журнал и проигрываются при восстановлении
+public sealed interface GameEvent {
+    record Joined(long userId, String username) implements GameEvent {}
+
+    record QuotaSet(RoleQuota quota) implements GameEvent {}
+
+    // seed — зерно перемешивания, из которого получен order (0 — неизвестно)
+    record RolesAssigned(long[] order, RoleQuota quota, long seed) implements GameEvent {}
+
+    record NightActed(long actorId, long targetId) implements GameEvent {}
+
+    record Voted(long voterId, long targetId) implements GameEvent {}
+
+    record Revealed(long userId) implements GameEvent {}
+
+    record LastWords(long userId) implements GameEvent {}
+
+    record NightResolved() implements GameEvent {}
+
+    record DayResolved() implements GameEvent {}
+
+    record PhaseStarted(GameCore.GameState state, long deadlineMillis) implements GameEvent {}
+
+    // Только в снапшотах: итог прошлых ночей и голосований
+    record Died(long userId) implements GameEvent {}
+
+    record Removed() implements GameEvent {}
+}
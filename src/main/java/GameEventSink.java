@@ -0,0 +1,15 @@
+public interface GameEventSink {
+    GameEventSink NONE = (gameChatId, event) -> 0;
+
+    // Возвращает порядковый номер события в журнале
+    long record(long gameChatId, GameEvent event);
+
+    // Пишет в оба приёмника; номер события — из основного
+    static GameEventSink tee(GameEventSink primary, GameEventSink secondary) {
+        return (gameChatId, event) -> {
+            long seq = primary.record(gameChatId, event);
+            secondary.record(gameChatId, event);
+            return seq;
+        };
+    }
+}
@@ -0,0 +1,325 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Append-only журнал событий всех игр (journal-N.log) плюс периодический снапшот (snapshot.txt).
+// Строка журнала: seq \t gameChatId \t TYPE \t поля...
+public class GameJournal implements GameEventSink {
+    private static final Logger log = LoggerFactory.getLogger(Main.class);
+    private static final String SNAPSHOT_FILE = "snapshot.txt";
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path dir;
+    private final BlockingQueue<Object> pending = new LinkedBlockingQueue<>(); // строки и служебные задачи писателя
+    private final ScheduledExecutorService snapshots = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "journal-snapshot");
+        t.setDaemon(true);
+        return t;
+    });
+    private Thread writer;
+    private volatile boolean running;
+    private long seq; // guarded by this
+    private long seqAtLastSnapshot;
+    private int segment;
+    private FileOutputStream segmentStream;
+    private Writer out;
+
+    public GameJournal(Path dir) {
+        this.dir = dir;
+    }
+
+    // Поднимает игры из снапшота и журнала; вызывается до подключения журнала к реестру
+    public void recover(GameRegistry registry) throws IOException {
+        Files.createDirectories(dir);
+        long started = System.nanoTime();
+        int baseSegment = 0;
+        int events = 0;
+
+        Path snapshot = dir.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            try (BufferedReader reader = Files.newBufferedReader(snapshot, StandardCharsets.UTF_8)) {
+                baseSegment = Integer.parseInt(reader.readLine().substring("#segment ".length()));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    applyLine(registry, line, true);
+                    events++;
+                }
+            }
+        }
+
+        List<Integer> segments = listSegments();
+        for (int n : segments) {
+            if (n < baseSegment) continue;
+            try (BufferedReader reader = Files.newBufferedReader(segmentPath(n), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) continue;
+                    applyLine(registry, line, false);
+                    events++;
+                }
+            }
+        }
+        registry.rebuildPlayerIndex();
+
+        segment = Math.max(baseSegment, segments.isEmpty() ? 0 : segments.get(segments.size() - 1)) + 1;
+        seqAtLastSnapshot = -1;
+        openSegment();
+        startWriter();
+        log.info("Recovered {} games from {} journal records in {} ms", registry.size(), events,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    // capture возвращает закодированные снапшоты игр, снятые в их собственных очередях
+    public void scheduleSnapshots(long periodSeconds, Supplier<List<CompletableFuture<String>>> capture) {
+        snapshots.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot(capture);
+            } catch (Exception e) {
+                log.error("Snapshot failed", e);
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    // Внеочередной снапшот (перед остановкой) в том же потоке, что и плановые
+    public void snapshotNow(Supplier<List<CompletableFuture<String>>> capture, long timeoutMillis) throws Exception {
+        snapshots.submit(() -> {
+            snapshot(capture);
+            return null;
+        }).get(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized long record(long gameChatId, GameEvent event) {
+        long next = ++seq;
+        pending.add(encode(next, gameChatId, event));
+        return next;
+    }
+
+    public String encodeSnapshot(GameCore game) {
+        if (game.getGameChatId() == 0 || game.getGameState() == GameCore.GameState.ENDED) return "";
+        StringBuilder sb = new StringBuilder();
+        for (GameEvent event : game.snapshotEvents()) {
+            sb.append(encode(game.getLastEventSeq(), game.getGameChatId(), event)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    // Обратное к encodeSnapshot: события одной игры без номеров и id чата
+    public static List<GameEvent> decodeSnapshot(String snapshot) {
+        List<GameEvent> events = new ArrayList<>();
+        for (String line : snapshot.split("\n")) {
+            if (!line.isEmpty()) events.add(decode(line.split("\t", -1)));
+        }
+        return events;
+    }
+
+    public void close() {
+        snapshots.shutdown();
+        running = false;
+        if (writer != null) {
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void snapshot(Supplier<List<CompletableFuture<String>>> capture) throws Exception {
+        synchronized (this) {
+            if (seq == seqAtLastSnapshot) return;
+            seqAtLastSnapshot = seq;
+        }
+        // Сначала переключаем сегмент: всё, что попадёт в снапшот, либо в нём, либо в новом сегменте
+        CompletableFuture<Integer> rotated = new CompletableFuture<>();
+        pending.add((Runnable) () -> {
+            try {
+                closeSegment();
+                segment++;
+                openSegment();
+                rotated.complete(segment);
+            } catch (IOException e) {
+                rotated.completeExceptionally(e);
+            }
+        });
+        int base = rotated.get(10, TimeUnit.SECONDS);
+
+        List<CompletableFuture<String>> parts = capture.get();
+        Path tmp = dir.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             Writer w = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8))) {
+            w.write("#segment " + base + "\n");
+            for (CompletableFuture<String> part : parts) {
+                w.write(part.get(10, TimeUnit.SECONDS));
+            }
+            w.flush();
+            fos.getChannel().force(true);
+        }
+        Files.move(tmp, dir.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        for (int n : listSegments()) {
+            if (n < base) Files.deleteIfExists(segmentPath(n));
+        }
+        log.debug("Snapshot of {} games written, journal continues at segment {}", parts.size(), base);
+    }
+
+    private void startWriter() {
+        running = true;
+        writer = new Thread(this::writeLoop, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Групповая запись: всё накопленное пишется одним flush + fsync
+    private void writeLoop() {
+        List<Object> batch = new ArrayList<>();
+        while (running || !pending.isEmpty()) {
+            try {
+                Object first = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                pending.drainTo(batch);
+                for (Object item : batch) {
+                    if (item instanceof String line) {
+                        out.write(line);
+                        out.write('\n');
+                    } else {
+                        out.flush();
+                        ((Runnable) item).run();
+                    }
+                }
+                out.flush();
+                segmentStream.getChannel().force(false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException e) {
+                log.error("Journal write failed", e);
+            } finally {
+                batch.clear();
+            }
+        }
+        try {
+            closeSegment();
+        } catch (IOException e) {
+            log.error("Cannot close journal", e);
+        }
+    }
+
+    private void openSegment() throws IOException {
+        segmentStream = new FileOutputStream(segmentPath(segment).toFile(), true);
+        out = new BufferedWriter(new OutputStreamWriter(segmentStream, StandardCharsets.UTF_8));
+    }
+
+    private void closeSegment() throws IOException {
+        if (out != null) {
+            out.flush();
+            segmentStream.getChannel().force(false);
+            out.close();
+        }
+    }
+
+    private void applyLine(GameRegistry registry, String line, boolean fromSnapshot) {
+        String[] f = line.split("\t", -1);
+        long lineSeq = Long.parseLong(f[0]);
+        long chatId = Long.parseLong(f[1]);
+        synchronized (this) {
+            seq = Math.max(seq, lineSeq);
+        }
+        GameEvent event = decode(f);
+
+        if (event instanceof GameEvent.Removed) {
+            registry.remove(chatId);
+            return;
+        }
+        GameCore game = registry.findByChat(chatId);
+        if (game == null) {
+            // Хвост игры, начало которой ушло в удалённый сегмент и которая не попала в снапшот
+            if (!(event instanceof GameEvent.Joined)) return;
+            game = registry.getOrCreate(chatId);
+        } else if (!fromSnapshot && lineSeq <= game.getLastEventSeq()) {
+            return;
+        }
+        try {
+            game.apply(event);
+        } catch (RuntimeException e) {
+            log.debug("Skipping journal record {}: {}", lineSeq, e.getMessage());
+        }
+        game.setLastEventSeq(lineSeq);
+    }
+
+    private static String encode(long seq, long chatId, GameEvent event) {
+        String prefix = seq + "\t" + chatId + "\t";
+        return prefix + switch (event) {
+            case GameEvent.Joined e -> "JOIN\t" + e.userId() + "\t" + (e.username() == null ? "" : e.username());
+            case GameEvent.QuotaSet e -> "QUOTA\t" + encodeQuota(e.quota());
+            case GameEvent.RolesAssigned e -> "ROLES\t" + joinIds(e.order()) + "\t" + encodeQuota(e.quota()) + "\t" + e.seed();
+            case GameEvent.NightActed e -> "NIGHT\t" + e.actorId() + "\t" + e.targetId();
+            case GameEvent.Voted e -> "VOTE\t" + e.voterId() + "\t" + e.targetId();
+            case GameEvent.Revealed e -> "REVEAL\t" + e.userId();
+            case GameEvent.LastWords e -> "WORDS\t" + e.userId();
+            case GameEvent.NightResolved e -> "NIGHT_END";
+            case GameEvent.DayResolved e -> "DAY_END";
+            case GameEvent.PhaseStarted e -> "PHASE\t" + e.state() + "\t" + e.deadlineMillis();
+            case GameEvent.Died e -> "DIED\t" + e.userId();
+            case GameEvent.Removed e -> "REMOVE";
+        };
+    }
+
+    private static GameEvent decode(String[] f) {
+        return switch (f[2]) {
+            case "JOIN" -> new GameEvent.Joined(Long.parseLong(f[3]), f[4].isEmpty() ? null : f[4]);
+            case "QUOTA" -> new GameEvent.QuotaSet(decodeQuota(f[3]));
+            // Записи до появления квот раздавали по одной активной роли
+            case "ROLES" -> new GameEvent.RolesAssigned(Arrays.stream(f[3].split(",")).mapToLong(Long::parseLong).toArray(),
+                    f.length > 4 ? decodeQuota(f[4]) : RoleQuota.CLASSIC, f.length > 5 ? Long.parseLong(f[5]) : 0);
+            case "NIGHT" -> new GameEvent.NightActed(Long.parseLong(f[3]), Long.parseLong(f[4]));
+            case "VOTE" -> new GameEvent.Voted(Long.parseLong(f[3]), Long.parseLong(f[4]));
+            case "REVEAL" -> new GameEvent.Revealed(Long.parseLong(f[3]));
+            case "WORDS" -> new GameEvent.LastWords(Long.parseLong(f[3]));
+            case "NIGHT_END" -> new GameEvent.NightResolved();
+            case "DAY_END" -> new GameEvent.DayResolved();
+            case "PHASE" -> new GameEvent.PhaseStarted(GameCore.GameState.valueOf(f[3]), Long.parseLong(f[4]));
+            case "DIED" -> new GameEvent.Died(Long.parseLong(f[3]));
+            case "REMOVE" -> new GameEvent.Removed();
+            default -> throw new IllegalArgumentException("Unknown journal record " + f[2]);
+        };
+    }
+
+    private static String encodeQuota(RoleQuota quota) {
+        return quota.mafia() + "," + quota.doctors() + "," + quota.commissars();
+    }
+
+    private static RoleQuota decodeQuota(String field) {
+        String[] counts = field.split(",");
+        return new RoleQuota(Integer.parseInt(counts[0]), Integer.parseInt(counts[1]), Integer.parseInt(counts[2]));
+    }
+
+    private static String joinIds(long[] ids) {
+        StringJoiner joiner = new StringJoiner(",");
+        for (long id : ids) joiner.add(Long.toString(id));
+        return joiner.toString();
+    }
+
+    private List<Integer> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path segmentPath(int n) {
+        return dir.resolve(SEGMENT_PREFIX + n + SEGMENT_SUFFIX);
+    }
+}
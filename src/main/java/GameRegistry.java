@@ -0,0 +1,148 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class GameRegistry {
+    private final ConcurrentHashMap<Long, GameCore> games = new ConcurrentHashMap<>(); // gameChatId → game
+    private final ConcurrentHashMap<Long, Long> playerGames = new ConcurrentHashMap<>(); // userId → gameChatId
+    private final Set<Long> awaitingLastWords = ConcurrentHashMap.newKeySet(); // погибшие, чей следующий текст уйдёт в чат
+    private final ConcurrentHashMap<Long, Long> lobbyActivity = new ConcurrentHashMap<>(); // gameChatId → последняя команда в лобби, epoch millis
+    private volatile GameEventSink events = GameEventSink.NONE;
+
+    public GameCore getOrCreate(long gameChatId) {
+        return games.computeIfAbsent(gameChatId, id -> {
+            GameCore game = new GameCore();
+            game.setGameChatId(id);
+            game.setEventSink(events);
+            lobbyActivity.put(id, System.currentTimeMillis());
+            return game;
+        });
+    }
+
+    public GameCore findByChat(long gameChatId) {
+        return games.get(gameChatId);
+    }
+
+    public GameCore findByPlayer(long userId) {
+        Long gameChatId = playerGames.get(userId);
+        return gameChatId == null ? null : games.get(gameChatId);
+    }
+
+    // Групповой чат — только по id чата, личка (id чата совпадает с id пользователя) — через игру, в которой он сидит.
+    // Команда из чужой группы не должна дотянуться до игры пользователя в другом чате
+    public GameCore resolve(long chatId, long userId) {
+        GameCore game = games.get(chatId);
+        return game != null || chatId != userId ? game : findByPlayer(userId);
+    }
+
+    // Ключ очереди апдейта: как resolve, но только по связкам реестра, без чтения состояния игры —
+    // вызывается из потока приёма, пока очередь игры может её сбрасывать
+    public long mailboxKey(long chatId, long userId) {
+        if (chatId != userId || games.containsKey(chatId)) return chatId;
+        Long gameChatId = playerGames.get(userId);
+        return gameChatId != null ? gameChatId : chatId;
+    }
+
+    public void bindPlayer(long userId, long gameChatId) {
+        Long current = playerGames.putIfAbsent(userId, gameChatId);
+        if (current != null && current != gameChatId) {
+            throw new IllegalStateException("Вы уже участвуете в игре в другом чате!");
+        }
+    }
+
+    public void remove(long gameChatId) {
+        GameCore game = games.remove(gameChatId);
+        if (game == null) return;
+        lobbyActivity.remove(gameChatId);
+        for (long userId : game.getPlayerIds()) {
+            if (playerGames.remove(userId, gameChatId)) {
+                awaitingLastWords.remove(userId);
+            }
+        }
+        events.record(gameChatId, new GameEvent.Removed());
+    }
+
+    public void touchLobby(long gameChatId) {
+        lobbyActivity.computeIfPresent(gameChatId, (id, last) -> System.currentTimeMillis());
+    }
+
+    // Игра началась — простой лобби ей больше не грозит
+    public void lobbyStarted(long gameChatId) {
+        lobbyActivity.remove(gameChatId);
+    }
+
+    // Лобби к выселению: простаивают дольше ttl, а сверх лимита — самые давние. gameChatId → отметка активности,
+    // по которой выселение перепроверяется в очереди игры. Состояние читается без очереди и может устареть
+    public Map<Long, Long> idleLobbies(long nowMillis, long ttlMillis, int maxLobbies) {
+        List<Map.Entry<Long, Long>> lobbies = new ArrayList<>();
+        for (Map.Entry<Long, Long> entry : lobbyActivity.entrySet()) {
+            GameCore game = games.get(entry.getKey());
+            if (game == null || game.getGameState() != GameCore.GameState.WAITING) {
+                lobbyActivity.remove(entry.getKey(), entry.getValue());
+            } else {
+                lobbies.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        lobbies.sort(Map.Entry.comparingByValue());
+        Map<Long, Long> idle = new LinkedHashMap<>();
+        int overflow = lobbies.size() - maxLobbies;
+        for (Map.Entry<Long, Long> lobby : lobbies) {
+            if (idle.size() >= overflow && nowMillis - lobby.getValue() < ttlMillis) break;
+            idle.put(lobby.getKey(), lobby.getValue());
+        }
+        return idle;
+    }
+
+    // true, если с отметки из idleLobbies в лобби никто ничего не делал
+    public boolean isLobbyIdleSince(long gameChatId, long activityMillis) {
+        Long last = lobbyActivity.get(gameChatId);
+        return last != null && last == activityMillis;
+    }
+
+    // Читается из потока приёма апдейтов, поэтому хранится отдельно от состояния игры
+    public void awaitLastWords(long userId) {
+        awaitingLastWords.add(userId);
+    }
+
+    public void lastWordsSaid(long userId) {
+        awaitingLastWords.remove(userId);
+    }
+
+    public boolean isAwaitingLastWords(long userId) {
+        return awaitingLastWords.contains(userId);
+    }
+
+    // После восстановления из журнала заново связываем игроков с их играми
+    public void rebuildPlayerIndex() {
+        playerGames.clear();
+        awaitingLastWords.clear();
+        games.values().forEach(this::indexPlayers);
+    }
+
+    public void indexPlayers(GameCore game) {
+        for (long userId : game.getPlayerIds()) {
+            playerGames.put(userId, game.getGameChatId());
+        }
+        game.getPlayers().forEach(p -> {
+            if (!p.isAlive() && !game.hasLastWords(p.getUserId())) {
+                awaitingLastWords.add(p.getUserId());
+            }
+        });
+    }
+
+    public void setEventSink(GameEventSink events) {
+        this.events = events;
+        games.values().forEach(game -> game.setEventSink(events));
+    }
+
+    public Collection<GameCore> getGames() {
+        return Collections.unmodifiableCollection(games.values());
+    }
+
+    public int size() {
+        return games.size();
+    }
+
+    public int getLobbyCount() {
+        return lobbyActivity.size();
+    }
+}
@@ -0,0 +1,121 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+
+// Офлайн-воспроизведение партий из архива событий.
+// java -cp Mafia.jar GameReplay data/archive [--game <chatId>] [--trace] [--repeat N]
+public class GameReplay {
+    private final Long gameFilter;
+    private final boolean trace;
+    private GameRegistry registry;
+    private long events;
+    private long started;
+    private long finished;
+    private long orphans;
+    private long errors;
+    private long seedMismatches;
+
+    GameReplay(Long gameFilter, boolean trace) {
+        this.gameFilter = gameFilter;
+        this.trace = trace;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("Usage: GameReplay <archive dir or file> [--game <chatId>] [--trace] [--repeat N]");
+            return;
+        }
+        Path source = Path.of(args[0]);
+        Long game = null;
+        boolean trace = false;
+        int repeat = 1;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--game" -> game = Long.parseLong(args[++i]);
+                case "--trace" -> trace = true;
+                case "--repeat" -> repeat = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        List<Path> files = Files.isDirectory(source) ? GameArchive.listFiles(source) : List.of(source);
+
+        for (int run = 1; run <= repeat; run++) {
+            GameReplay replay = new GameReplay(game, trace && run == 1);
+            long startedAt = System.nanoTime();
+            replay.run(files);
+            double seconds = (System.nanoTime() - startedAt) / 1e9;
+            System.out.printf("run %d: %d files, %d events in %.3f s (%.0f events/s)%n",
+                    run, files.size(), replay.events, seconds, replay.events / seconds);
+            if (run == 1) replay.report();
+        }
+    }
+
+    void run(List<Path> files) throws Exception {
+        registry = new GameRegistry();
+        for (Path file : files) {
+            GameArchive.read(file, this::apply);
+        }
+    }
+
+    private void apply(long timeMillis, long chatId, GameEvent event) {
+        events++;
+        boolean selected = gameFilter == null || gameFilter == chatId;
+        if (trace && selected) {
+            System.out.println(Instant.ofEpochMilli(timeMillis) + " " + chatId + " " + describe(event));
+        }
+
+        GameCore game = registry.findByChat(chatId);
+        if (game == null) {
+            // Начало партии раньше самого старого файла архива
+            if (!(event instanceof GameEvent.Joined)) {
+                orphans++;
+                return;
+            }
+            game = registry.getOrCreate(chatId);
+            started++;
+        }
+        if (event instanceof GameEvent.RolesAssigned e && e.seed() != 0
+                && !Arrays.equals(game.shuffledOrder(e.seed()), e.order())) {
+            seedMismatches++;
+            System.out.println("Seed " + e.seed() + " does not reproduce the role order of game " + chatId);
+        }
+        try {
+            game.apply(event);
+        } catch (RuntimeException e) {
+            errors++;
+            if (selected) System.out.println("Game " + chatId + ": " + describe(event) + " failed: " + e.getMessage());
+        }
+        if (event instanceof GameEvent.Removed) {
+            finished++;
+            if (gameFilter != null && selected) printGame(game);
+            registry.remove(chatId);
+        }
+    }
+
+    private void report() {
+        System.out.printf("games: %d started, %d finished, %d still running; %d orphan events, %d failed events, %d seed mismatches%n",
+                started, finished, registry.size(), orphans, errors, seedMismatches);
+        if (gameFilter != null && registry.findByChat(gameFilter) != null) {
+            printGame(registry.findByChat(gameFilter));
+        }
+    }
+
+    private static void printGame(GameCore game) {
+        System.out.println("Game " + game.getGameChatId() + ": " + game.getGameState());
+        if (game.getGameState() == GameCore.GameState.WAITING) {
+            System.out.println("  lobby: " + Arrays.toString(game.getPlayerIds()));
+            return;
+        }
+        for (Player p : game.getPlayers()) {
+            System.out.println("  " + p.getUsername() + " (" + p.getUserId() + ") - " + p.getRole().getDisplayName()
+                    + (p.isAlive() ? "" : ", dead"));
+        }
+    }
+
+    private static String describe(GameEvent event) {
+        return event instanceof GameEvent.RolesAssigned e
+                ? "RolesAssigned[order=" + Arrays.toString(e.order()) + ", quota=" + e.quota() + ", seed=" + e.seed() + "]"
+                : event.toString();
+    }
+}
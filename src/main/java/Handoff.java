@@ -0,0 +1,44 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Остаток текущей фазы каждой живой игры на момент остановки. Следующий процесс продолжает фазу
+// с того же места, а не со старого дедлайна — время передеплоя не съедает ход игроков
+public class Handoff {
+    private static final String FILE = "handoff.txt";
+
+    public static void write(Path dir, long frozenAtMillis, Map<Long, Long> remainingMillis) throws IOException {
+        Path tmp = dir.resolve(FILE + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             Writer w = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8))) {
+            w.write("#frozen " + frozenAtMillis + "\n");
+            for (Map.Entry<Long, Long> entry : remainingMillis.entrySet()) {
+                w.write(entry.getKey() + "\t" + entry.getValue() + "\n");
+            }
+            w.flush();
+            fos.getChannel().force(true);
+        }
+        Files.move(tmp, dir.resolve(FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // gameChatId → оставшиеся миллисекунды фазы; пусто, если прошлый процесс упал, а не остановился
+    public static Map<Long, Long> read(Path dir) throws IOException {
+        Map<Long, Long> remaining = new HashMap<>();
+        Path file = dir.resolve(FILE);
+        if (!Files.exists(file)) return remaining;
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (String line : lines) {
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] f = line.split("\t");
+            remaining.put(Long.parseLong(f[0]), Long.parseLong(f[1]));
+        }
+        return remaining;
+    }
+
+    public static void delete(Path dir) throws IOException {
+        Files.deleteIfExists(dir.resolve(FILE));
+    }
+}
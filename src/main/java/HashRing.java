@@ -0,0 +1,62 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+// Консистентное хеширование: у каждого воркера VNODES точек на кольце, ключ достаётся ближайшей точке по часовой.
+// При входе или выходе воркера переезжает только ~1/N ключей. Неизменяемое — при изменении состава строится заново
+public final class HashRing {
+    private static final int VNODES = 128;
+    public static final HashRing EMPTY = new HashRing(List.of());
+
+    private final long[] points;
+    private final String[] owners;
+
+    public HashRing(Collection<String> workers) {
+        List<Point> all = new ArrayList<>(workers.size() * VNODES);
+        for (String worker : workers) {
+            for (int i = 0; i < VNODES; i++) {
+                all.add(new Point(hash(worker + "#" + i), worker));
+            }
+        }
+        all.sort(Comparator.comparingLong(Point::hash));
+        points = new long[all.size()];
+        owners = new String[all.size()];
+        for (int i = 0; i < all.size(); i++) {
+            points[i] = all.get(i).hash();
+            owners[i] = all.get(i).owner();
+        }
+    }
+
+    // null — на кольце никого нет
+    public String owner(long key) {
+        if (points.length == 0) return null;
+        int i = Arrays.binarySearch(points, mix(key));
+        if (i < 0) i = -i - 1;
+        return owners[i == points.length ? 0 : i];
+    }
+
+    public boolean isEmpty() {
+        return points.length == 0;
+    }
+
+    // Финализатор splitmix64: соседние id чатов разлетаются по всему кольцу
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    // FNV-1a
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private record Point(long hash, String owner) {}
+}
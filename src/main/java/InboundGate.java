@@ -0,0 +1,82 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Входной фильтр перед очередями игр: лимит команд на пользователя и ограниченное число необработанных апдейтов.
+// При перегрузке первыми отбрасываются низкоприоритетные апдейты (текст вне команд)
+public class InboundGate {
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    public enum Priority {COMMAND, CHATTER}
+
+    private final int capacity;
+    private final ConfigWatcher config;
+    private final int chatterLimit;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Map<Long, UserBucket> userBuckets = new ConcurrentHashMap<>();
+    private final LongAdder rateLimited;
+    private final LongAdder shed;
+    private volatile long nextSweepNanos = System.nanoTime() + SWEEP_INTERVAL_NANOS;
+
+    public InboundGate(int capacity, ConfigWatcher config, Metrics metrics) {
+        this.capacity = capacity;
+        this.config = config;
+        this.chatterLimit = capacity / 2;
+        this.rateLimited = metrics.counter("mafia_inbound_dropped_total", "reason=\"rate_limit\"");
+        this.shed = metrics.counter("mafia_inbound_dropped_total", "reason=\"overload\"");
+        metrics.gauge("mafia_inbound_pending", "", pending::get);
+    }
+
+    // true — апдейт принят, и после обработки нужно вызвать release()
+    public boolean tryAcquire(long userId, Priority priority) {
+        long now = System.nanoTime();
+        if (now - nextSweepNanos > 0) {
+            sweep(now);
+        }
+        int limit = priority == Priority.COMMAND ? capacity : chatterLimit;
+        if (pending.incrementAndGet() > limit) {
+            pending.decrementAndGet();
+            shed.increment();
+            return false;
+        }
+        // Корзина помнит лимиты, из которых построена: после перечитки с другими лимитами строится заново
+        BotConfig current = config.get();
+        UserBucket bucket = userBuckets.get(userId);
+        if (bucket == null || !bucket.matches(current)) {
+            bucket = userBuckets.compute(userId, (id, existing) -> existing != null && existing.matches(current)
+                    ? existing : new UserBucket(current));
+        }
+        if (!bucket.tokens.tryAcquire(now)) {
+            pending.decrementAndGet();
+            rateLimited.increment();
+            return false;
+        }
+        return true;
+    }
+
+    public void release() {
+        pending.decrementAndGet();
+    }
+
+    public int getPending() {
+        return pending.get();
+    }
+
+    private void sweep(long now) {
+        nextSweepNanos = now + SWEEP_INTERVAL_NANOS;
+        userBuckets.values().removeIf(bucket -> bucket.tokens.isIdle(now));
+    }
+
+    private record UserBucket(int perSecond, int burst, TokenBucket tokens) {
+        UserBucket(BotConfig config) {
+            this(config.inboundPerSecond(), config.inboundBurst(),
+                    new TokenBucket(config.inboundPerSecond(), 1, TimeUnit.SECONDS, config.inboundBurst()));
+        }
+
+        boolean matches(BotConfig config) {
+            return perSecond == config.inboundPerSecond() && burst == config.inboundBurst();
+        }
+    }
+}
@@ -0,0 +1,495 @@
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
+import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.*;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Распределённый режим: long polling у Telegram может быть только один, поэтому его держит тонкий ingress,
+// а игры живут в воркерах. Групповой чат уходит воркеру по консистентному хешу id чата, личка — воркеру игры,
+// в которой сидит пользователь. Игра с игроками закреплена за воркером и переезжает только целиком:
+// EXPORT у старого владельца → STATE → ADOPT у нового → ADOPTED → RELEASE старому владельцу, который до этого
+// хранит снапшот и пересылает его после переподключения. Пока игра в пути или её воркер недоступен, апдейты копятся
+public class Ingress extends TelegramLongPollingBot {
+    private static final Logger log = LoggerFactory.getLogger(Main.class);
+    private static final int MAX_BUFFERED = 1_000; // апдейтов на игру
+    private static final int MAX_ADOPT_ATTEMPTS = 3; // подряд, дальше снапшот ждёт смены кольца
+
+    private final SocketAddress listenAddress;
+    private final String botToken;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Metrics metrics = new Metrics();
+    private final LongAdder routed = metrics.counter("mafia_ingress_updates_total", "result=\"routed\"");
+    private final LongAdder buffered = metrics.counter("mafia_ingress_updates_total", "result=\"buffered\"");
+    private final LongAdder dropped = metrics.counter("mafia_ingress_updates_total", "result=\"dropped\"");
+    private final LongAdder migrations = metrics.counter("mafia_ingress_migrations_total", "");
+    private final AtomicInteger connections = new AtomicInteger();
+    // Всё состояние маршрутизации — под монитором this: ingress тонкий, а переезды требуют согласованности
+    private final Map<String, WorkerLink> workers = new HashMap<>(); // id → подключённый воркер
+    private final LongMap<Placement> placements = new LongMap<>(); // gameChatId → где живёт игра
+    private final LongMap<Long> playerGames = new LongMap<>(); // userId → gameChatId
+    private HashRing ring = HashRing.EMPTY;
+    private ServerSocketChannel server;
+    private volatile boolean running = true;
+
+    public Ingress(String listenAddress, String botToken) {
+        super(new DefaultBotOptions());
+        this.listenAddress = PartitionFrame.address(listenAddress);
+        this.botToken = botToken;
+        metrics.gauge("mafia_ingress_workers", "", this::getReadyWorkers);
+        metrics.gauge("mafia_ingress_games", "", () -> {
+            synchronized (this) {
+                return placements.size();
+            }
+        });
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public synchronized int getReadyWorkers() {
+        return (int) workers.values().stream().filter(link -> link.ready).count();
+    }
+
+    public void start() throws IOException {
+        if (listenAddress instanceof UnixDomainSocketAddress unix) {
+            Files.deleteIfExists(unix.getPath());
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            server = ServerSocketChannel.open();
+        }
+        server.bind(listenAddress);
+        Thread acceptor = new Thread(this::acceptLoop, "ingress-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("Ingress is waiting for workers at {}", listenAddress);
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            server.close();
+            if (listenAddress instanceof UnixDomainSocketAddress unix) {
+                Files.deleteIfExists(unix.getPath());
+            }
+        } catch (IOException e) {
+            log.debug("Cannot close ingress socket: {}", e.getMessage());
+        }
+        synchronized (this) {
+            workers.values().forEach(WorkerLink::close);
+        }
+    }
+
+    @Override
+    public String getBotUsername() {
+        return "MafiaGameBot";
+    }
+
+    @Override
+    public String getBotToken() {
+        return botToken;
+    }
+
+    @Override
+    public void onUpdateReceived(Update update) {
+        if (!update.hasMessage()) return;
+        Message message = update.getMessage();
+        long chatId = message.getChatId();
+        long userId = message.getFrom() != null ? message.getFrom().getId() : chatId;
+        PartitionFrame frame;
+        try {
+            frame = new PartitionFrame(PartitionFrame.Type.UPDATE, chatId, userId, mapper.writeValueAsBytes(update));
+        } catch (JsonProcessingException e) {
+            log.warn("Cannot serialize update {}: {}", update.getUpdateId(), e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            route(frame);
+        }
+    }
+
+    // guarded by this
+    private void route(PartitionFrame frame) {
+        long key = frame.a();
+        if (key > 0) {
+            Long gameChatId = playerGames.get(frame.b());
+            if (gameChatId != null) key = gameChatId;
+        }
+        Placement placement = placements.get(key);
+        if (placement != null) {
+            deliver(placement, frame);
+            return;
+        }
+        WorkerLink worker = ring.isEmpty() ? null : workers.get(ring.owner(key));
+        if (worker == null) {
+            dropped.increment();
+            return;
+        }
+        worker.send(frame);
+        routed.increment();
+    }
+
+    private void deliver(Placement placement, PartitionFrame frame) {
+        WorkerLink owner = placement.moving ? null : workers.get(placement.owner);
+        if (owner != null && owner.ready) {
+            owner.send(frame);
+            routed.increment();
+        } else if (placement.buffered.size() < MAX_BUFFERED) {
+            placement.buffered.add(frame);
+            buffered.increment();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    private synchronized void onFrame(WorkerLink link, PartitionFrame frame) {
+        long chatId = frame.a();
+        switch (frame.type()) {
+            case PLAYER -> {
+                long gameChatId = frame.b();
+                Placement placement = placements.get(gameChatId);
+                if (placement == null) {
+                    placement = new Placement(link.id);
+                    placements.put(gameChatId, placement);
+                } else if (!placement.moving) {
+                    placement.owner = link.id;
+                }
+                placement.players.add(chatId);
+                if (placement.owner.equals(link.id)) placement.announcedBy = link.number;
+                Long previous = playerGames.put(chatId, gameChatId);
+                if (previous != null && previous != gameChatId && placements.get(previous) != null) {
+                    placements.get(previous).players.remove(chatId);
+                }
+            }
+            case GONE -> {
+                Placement placement = placements.get(chatId);
+                if (placement != null && !placement.moving && placement.owner.equals(link.id)) {
+                    unpin(chatId, placement);
+                }
+            }
+            case READY -> {
+                dropUnannounced(link);
+                link.ready = true;
+                rebuildRing();
+                placements.forEach((gameChatId, placement) -> {
+                    if (!placement.moving && placement.owner.equals(link.id)) flush(placement, link);
+                    // ADOPT мог потеряться вместе с соединением: принятые игры воркер подтвердил до READY
+                    if (placement.moving && placement.state != null && link.id.equals(placement.target)) {
+                        link.send(PartitionFrame.of(PartitionFrame.Type.ADOPT, gameChatId, placement.state));
+                    }
+                });
+                rebalance();
+            }
+            case STATE -> {
+                Placement placement = placements.get(chatId);
+                if (frame.payload().length == 0) {
+                    // Игра закончилась, пока её собирались перевозить
+                    if (placement != null && placement.moving && placement.state == null && placement.owner.equals(link.id)) {
+                        unpin(chatId, placement);
+                    }
+                    checkLeaving();
+                    return;
+                }
+                if (placement == null) {
+                    // Ingress перезапустился, пока игра была в пути: снапшот пришёл повторно после переподключения
+                    placement = new Placement(link.id);
+                    placements.put(chatId, placement);
+                } else if (!placement.owner.equals(link.id)) {
+                    // Повтор снапшота, который уже принял другой воркер
+                    release(link, frame);
+                    return;
+                }
+                if (placement.state == null) {
+                    placement.moving = true;
+                    placement.state = frame.text();
+                    adopt(chatId, placement);
+                }
+                checkLeaving();
+            }
+            case ADOPTED -> {
+                release(link, frame);
+                Placement placement = placements.get(chatId);
+                if (placement == null || !placement.moving || !link.id.equals(placement.target)) return;
+                log.debug("Game {} moved from {} to {}", chatId, placement.owner, link.id);
+                WorkerLink source = workers.get(placement.owner);
+                if (source != null) {
+                    source.send(PartitionFrame.of(PartitionFrame.Type.RELEASE, chatId, PartitionFrame.Type.STATE.ordinal()));
+                }
+                placement.owner = link.id;
+                placement.moving = false;
+                placement.state = null;
+                placement.target = null;
+                placement.rejections = 0;
+                migrations.increment();
+                flush(placement, link);
+                checkLeaving();
+                // Пока игра ехала, кольцо могло снова поменяться
+                rebalance();
+            }
+            case REJECTED -> {
+                release(link, frame);
+                Placement placement = placements.get(chatId);
+                if (placement == null || !placement.moving || !link.id.equals(placement.target)) return;
+                placement.target = null;
+                if (++placement.rejections < MAX_ADOPT_ATTEMPTS) {
+                    adopt(chatId, placement);
+                } else {
+                    log.error("Game {} was rejected {} times, keeping its snapshot until workers change", chatId,
+                            placement.rejections);
+                }
+            }
+            case KEPT -> {
+                release(link, frame);
+                Placement placement = placements.get(chatId);
+                if (placement == null || !placement.moving || placement.state != null || !placement.owner.equals(link.id)) return;
+                // Игра жива у прежнего владельца; повторный EXPORT — при следующей ребалансировке
+                placement.moving = false;
+                if (link.ready) flush(placement, link);
+                checkLeaving();
+            }
+            case LEAVING -> {
+                log.info("Worker {} is leaving, moving its games", link.id);
+                link.leaving = true;
+                rebuildRing();
+                rebalance();
+                checkLeaving();
+            }
+            default -> log.warn("Unexpected frame {} from worker {}", frame.type(), link.id);
+        }
+    }
+
+    private synchronized void onHello(WorkerLink link) {
+        WorkerLink stale = workers.put(link.id, link);
+        if (stale != null) stale.close();
+        log.info("Worker {} connected", link.id);
+    }
+
+    private synchronized void onDisconnect(WorkerLink link) {
+        if (link.id == null || workers.get(link.id) != link) return;
+        workers.remove(link.id);
+        rebuildRing();
+        log.info("Worker {} disconnected", link.id);
+        placements.forEach((gameChatId, placement) -> {
+            // Снапшот не успели получить — игра остаётся за воркером до его возвращения; если он её уже отдал,
+            // снапшот придёт после переподключения. Игру, отправленную отключившейся цели, другому не отдаём:
+            // она могла уже подняться там, и её копии разошлись бы
+            if (placement.moving && placement.state == null && placement.owner.equals(link.id)) {
+                placement.moving = false;
+            }
+        });
+        rebalance();
+        checkLeaving();
+    }
+
+    // Игры подключённых воркеров, которые по кольцу должны жить в другом месте, отправляются в путь.
+    // Игры недоступного воркера ждут его возвращения: их состояние — в его журнале
+    private void rebalance() {
+        placements.forEach((gameChatId, placement) -> {
+            if (placement.moving) {
+                if (placement.state != null && placement.target == null) adopt(gameChatId, placement);
+                return;
+            }
+            WorkerLink owner = workers.get(placement.owner);
+            if (owner == null || !owner.ready) return;
+            String desired = ring.owner(gameChatId);
+            if (desired == null || desired.equals(placement.owner)) return;
+            placement.moving = true;
+            owner.send(PartitionFrame.of(PartitionFrame.Type.EXPORT, gameChatId, 0));
+        });
+    }
+
+    private void adopt(long gameChatId, Placement placement) {
+        String target = ring.owner(gameChatId);
+        WorkerLink worker = target == null ? null : workers.get(target);
+        placement.target = worker == null ? null : target; // без цели ждёт следующего воркера на кольце
+        if (worker != null) {
+            worker.send(PartitionFrame.of(PartitionFrame.Type.ADOPT, gameChatId, placement.state));
+        }
+    }
+
+    private void release(WorkerLink link, PartitionFrame reply) {
+        link.send(PartitionFrame.of(PartitionFrame.Type.RELEASE, reply.a(), reply.type().ordinal()));
+    }
+
+    // Воркер после переподключения заново объявил все свои игры. Его игры, которых в объявлении нет,
+    // закончились без связи с ingress: их GONE потерян, а игроки иначе так и ходили бы к этому воркеру
+    private void dropUnannounced(WorkerLink link) {
+        List<Long> stale = new ArrayList<>();
+        placements.forEach((gameChatId, placement) -> {
+            if (!placement.moving && placement.owner.equals(link.id) && placement.announcedBy != link.number) {
+                stale.add(gameChatId);
+            }
+        });
+        for (long gameChatId : stale) {
+            log.debug("Game {} ended while worker {} was away", gameChatId, link.id);
+            unpin(gameChatId, placements.get(gameChatId));
+        }
+    }
+
+    private void unpin(long gameChatId, Placement placement) {
+        placements.remove(gameChatId);
+        for (long userId : placement.players) {
+            Long current = playerGames.get(userId);
+            if (current != null && current == gameChatId) playerGames.remove(userId);
+        }
+        for (PartitionFrame frame : placement.buffered) {
+            route(frame);
+        }
+    }
+
+    private void flush(Placement placement, WorkerLink worker) {
+        PartitionFrame frame;
+        while ((frame = placement.buffered.poll()) != null) {
+            worker.send(frame);
+            routed.increment();
+        }
+    }
+
+    // Уходящий воркер отпускается, когда у него не осталось игр или отдавать их некому.
+    // Игра, которую ему успели отправить, тоже его: после ADOPTED она уедет дальше
+    private void checkLeaving() {
+        for (WorkerLink link : workers.values()) {
+            if (!link.leaving || link.left) continue;
+            if (ring.isEmpty() || !ownsGames(link.id)) {
+                link.left = true;
+                link.send(PartitionFrame.of(PartitionFrame.Type.LEFT, 0, 0));
+                log.info("Worker {} has no games left", link.id);
+            }
+        }
+    }
+
+    private boolean ownsGames(String workerId) {
+        boolean[] owns = {false};
+        placements.forEach((gameChatId, placement) ->
+                owns[0] |= placement.owner.equals(workerId) || workerId.equals(placement.target));
+        return owns[0];
+    }
+
+    private void rebuildRing() {
+        List<String> active = new ArrayList<>();
+        workers.forEach((id, link) -> {
+            if (link.ready && !link.leaving) active.add(id);
+        });
+        ring = new HashRing(active);
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                SocketChannel channel = server.accept();
+                WorkerLink link = new WorkerLink(channel, connections.incrementAndGet());
+                link.start();
+            } catch (IOException e) {
+                if (running) log.error("Ingress accept failed", e);
+            }
+        }
+    }
+
+    private static class Placement {
+        private String owner;
+        private boolean moving;
+        private String target; // куда отправлен снапшот
+        private String state; // снапшот в пути
+        private int announcedBy; // номер соединения владельца, в котором он последний раз объявил игру
+        private int rejections; // отказов принять снапшот подряд
+        private final Set<Long> players = new HashSet<>();
+        private final ArrayDeque<PartitionFrame> buffered = new ArrayDeque<>();
+
+        Placement(String owner) {
+            this.owner = owner;
+        }
+    }
+
+    private class WorkerLink {
+        private final SocketChannel channel;
+        private final int number;
+        private final BlockingQueue<PartitionFrame> outgoing = new LinkedBlockingQueue<>();
+        private String id;
+        private boolean ready;
+        private boolean leaving;
+        private boolean left;
+
+        WorkerLink(SocketChannel channel, int number) {
+            this.channel = channel;
+            this.number = number;
+        }
+
+        void start() {
+            Thread reader = new Thread(this::readLoop, "ingress-reader-" + number);
+            reader.setDaemon(true);
+            reader.start();
+            Thread writer = new Thread(this::writeLoop, "ingress-writer-" + number);
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        void send(PartitionFrame frame) {
+            outgoing.add(frame);
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Cannot close worker channel: {}", e.getMessage());
+            }
+        }
+
+        private void readLoop() {
+            try (channel) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+                PartitionFrame hello = PartitionFrame.read(in);
+                if (hello.type() != PartitionFrame.Type.HELLO) throw new IOException("Expected HELLO, got " + hello.type());
+                id = hello.text();
+                onHello(this);
+                while (running) {
+                    onFrame(this, PartitionFrame.read(in));
+                }
+            } catch (IOException e) {
+                log.debug("Worker connection {} closed: {}", number, e.getMessage());
+            } finally {
+                onDisconnect(this);
+            }
+        }
+
+        private void writeLoop() {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            while (channel.isOpen()) {
+                try {
+                    PartitionFrame first = outgoing.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) continue;
+                    first.write(out);
+                    PartitionFrame next;
+                    while ((next = outgoing.poll()) != null) {
+                        next.write(out);
+                    }
+                    out.flush();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    log.debug("Cannot write to worker {}: {}", id, e.getMessage());
+                    close();
+                    return;
+                }
+            }
+        }
+    }
+}
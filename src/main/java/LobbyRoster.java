@@ -0,0 +1,90 @@
+import java.util.Arrays;
+
+// Состав лобби до раздачи ролей: id и ники в параллельных массивах, без объектов Player.
+// Индекс по id — открытая адресация по номерам позиций, так что вход в большое лобби не сканирует весь список
+public class LobbyRoster {
+    private static final long[] NO_IDS = new long[0];
+    private static final String[] NO_NAMES = new String[0];
+    private static final int[] NO_SLOTS = new int[0];
+
+    private long[] ids = NO_IDS; // в порядке входа
+    private String[] names = NO_NAMES;
+    private int[] slots = NO_SLOTS; // позиция + 1; 0 — пусто
+    private int size;
+
+    public boolean add(long userId, String username) {
+        if (indexOf(userId) >= 0) return false;
+        if (size == ids.length) {
+            int capacity = Math.max(4, size * 2);
+            ids = Arrays.copyOf(ids, capacity);
+            names = Arrays.copyOf(names, capacity);
+        }
+        ids[size] = userId;
+        names[size] = username;
+        size++;
+        if (size * 2 > slots.length) {
+            rehash();
+        } else {
+            insert(size - 1);
+        }
+        return true;
+    }
+
+    public int indexOf(long userId) {
+        if (size == 0) return -1;
+        int mask = slots.length - 1;
+        for (int i = slot(userId, mask); slots[i] != 0; i = (i + 1) & mask) {
+            if (ids[slots[i] - 1] == userId) return slots[i] - 1;
+        }
+        return -1;
+    }
+
+    public boolean contains(long userId) {
+        return indexOf(userId) >= 0;
+    }
+
+    public long idAt(int index) {
+        return ids[index];
+    }
+
+    public String nameAt(int index) {
+        return names[index];
+    }
+
+    public long[] ids() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // После старта партии массивы отпускаются целиком
+    public void clear() {
+        ids = NO_IDS;
+        names = NO_NAMES;
+        slots = NO_SLOTS;
+        size = 0;
+    }
+
+    private void rehash() {
+        slots = new int[Integer.highestOneBit(size * 4)];
+        for (int i = 0; i < size; i++) {
+            insert(i);
+        }
+    }
+
+    private void insert(int index) {
+        int mask = slots.length - 1;
+        int i = slot(ids[index], mask);
+        while (slots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        slots[i] = index + 1;
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
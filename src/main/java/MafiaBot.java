@@ -1,20 +1,277 @@
-import io.github.cdimascio.dotenv.Dotenv;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.User;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 public class MafiaBot extends TelegramLongPollingBot {
     private static final Logger log = LoggerFactory.getLogger(Main.class);
-    private final GameCore gameCore = new GameCore();
-    private final Map<Long, Long> gameCreators = new HashMap<>();
-    private final Map<Long, Timer> gameTimers = new HashMap<>();
-    private final Map<Long, String> lastWords = new HashMap<>();
+    private static final long SNAPSHOT_PERIOD_SECONDS = 60;
+    private static final int TOP_SIZE = 10;
+    private static final long LOBBY_SWEEP_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private final Metrics metrics = new Metrics();
+    private final Histogram[] commandLatency = new Histogram[Command.Type.values().length];
+    private final CommandParser commands = new CommandParser(getBotUsername());
+    private final GameRegistry games = new GameRegistry();
+    private final PhaseScheduler phaseTimers = new PhaseScheduler(2, metrics.histogram("mafia_phase_timer_lateness_seconds", ""));
+    private final ChatMailboxes mailboxes = new ChatMailboxes();
+    private final InboundGate inbound;
+    private final LongAdder ignoredChatter = metrics.counter("mafia_inbound_dropped_total", "reason=\"chatter\"");
+    private final LongAdder phasesCompletedEarly = metrics.counter("mafia_phases_completed_early_total", "");
+    private final LongAdder lobbiesExpired = metrics.counter("mafia_lobbies_evicted_total", "reason=\"ttl\"");
+    private final LongAdder lobbiesOverLimit = metrics.counter("mafia_lobbies_evicted_total", "reason=\"limit\"");
+    private final GameJournal journal;
+    private final GameArchive archive;
+    private final StatsStore stats;
+    private final MessageDispatcher outbound;
+    private final ConfigWatcher config;
+    private final Path dataDir;
+    private volatile boolean accepting = true;
+
+    public MafiaBot(ConfigWatcher config) {
+        this(null, config, config.get().startup().journalDir(), true);
+    }
+
+    // Для нагрузочного стенда: свой транспорт вместо Telegram API и сжатые фазы
+    MafiaBot(Function<SendMessage, CompletableFuture<Message>> sender, long phaseMillis, Path journalDir, boolean rateLimited) {
+        this(sender, new ConfigWatcher(BotConfig.withPhases(Duration.ofMillis(phaseMillis)), null), journalDir, rateLimited);
+    }
+
+    private MafiaBot(Function<SendMessage, CompletableFuture<Message>> sender, ConfigWatcher config, Path journalDir,
+                     boolean rateLimited) {
+        super(botOptions());
+        this.config = config;
+        this.inbound = new InboundGate(10_000, config, metrics);
+        this.dataDir = journalDir;
+        this.journal = new GameJournal(journalDir);
+        this.archive = new GameArchive(journalDir.resolve("archive"));
+        this.stats = new StatsStore(journalDir, TOP_SIZE);
+        this.outbound = new MessageDispatcher(sender != null ? sender : this::executeOutbound, 10_000, rateLimited, metrics);
+        registerMetrics();
+    }
+
+    private void registerMetrics() {
+        for (Command.Type type : Command.Type.values()) {
+            commandLatency[type.ordinal()] = metrics.histogram("mafia_update_seconds", "command=\"" + type.getLabel() + "\"");
+        }
+
+        // Гауджи считаются при скрейпе, на горячий путь не влияют
+        for (GameCore.GameState state : GameCore.GameState.values()) {
+            metrics.gauge("mafia_games", "state=\"" + state + "\"",
+                    () -> games.getGames().stream().filter(g -> g.getGameState() == state).count());
+        }
+        metrics.gauge("mafia_players", "", () -> games.getGames().stream().mapToLong(GameCore::getPlayerCount).sum());
+        metrics.gauge("mafia_lobbies", "", games::getLobbyCount);
+        metrics.gauge("mafia_phase_timers", "", phaseTimers::getActiveTimers);
+        metrics.gauge("mafia_mailboxes", "", mailboxes::getMailboxCount);
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    private static DefaultBotOptions botOptions() {
+        DefaultBotOptions options = new DefaultBotOptions();
+        options.setMaxThreads(4); // потоки executeAsync
+        return options;
+    }
+
+    // Поднимает игры из журнала и перезапускает таймеры фаз на оставшееся время.
+    // После штатной остановки остаток берётся из handoff, после падения — из дедлайна в журнале
+    public void recoverGames() throws IOException {
+        stats.load();
+        journal.recover(games);
+        archive.open();
+        games.setEventSink(GameEventSink.tee(journal, archive));
+        Map<Long, Long> handoff = Handoff.read(dataDir);
+        long now = System.currentTimeMillis();
+        for (GameCore gameCore : games.getGames()) {
+            if (gameCore.getGameState() != GameCore.GameState.NIGHT && gameCore.getGameState() != GameCore.GameState.DAY) continue;
+            Long frozen = handoff.get(gameCore.getGameChatId());
+            long deadline = gameCore.getPhaseDeadline();
+            long remaining = frozen != null ? frozen : deadline == 0 ? phaseMillis(gameCore) : Math.max(0, deadline - now);
+            if (frozen != null) {
+                gameCore.setPhaseDeadline(now + remaining);
+            }
+            resumePhase(gameCore, remaining);
+        }
+        Handoff.delete(dataDir);
+        if (!handoff.isEmpty()) {
+            log.info("Resumed {} games from handoff", handoff.size());
+        }
+        journal.scheduleSnapshots(SNAPSHOT_PERIOD_SECONDS, this::captureGames);
+        phaseTimers.repeat(LOBBY_SWEEP_MILLIS, this::sweepLobbies);
+    }
+
+    private void resumePhase(GameCore gameCore, long remainingMillis) {
+        switch (gameCore.getGameState()) {
+            case NIGHT -> armTimer(gameCore, remainingMillis, () -> startDayPhase(gameCore));
+            case DAY -> armTimer(gameCore, remainingMillis, () -> endDayPhase(gameCore));
+            default -> {
+            }
+        }
+    }
+
+    // Воркер за ingress: события игр дополнительно уходят в канал к ingress. Вызывается после recoverGames
+    void attachPartition(GameEventSink partition) {
+        games.setEventSink(GameEventSink.tee(GameEventSink.tee(journal, archive), partition));
+    }
+
+    GameRegistry getGames() {
+        return games;
+    }
+
+    // Отдаёт игру другому воркеру: остаток фазы и снапшот, после чего игра здесь забывается.
+    // Пустая строка — игры уже нет
+    CompletableFuture<String> exportGame(long chatId) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        mailboxes.execute(chatId, () -> {
+            GameCore gameCore = games.findByChat(chatId);
+            String snapshot;
+            try {
+                snapshot = gameCore == null ? "" : journal.encodeSnapshot(gameCore);
+            } catch (RuntimeException e) {
+                // Игра остаётся здесь нетронутой
+                result.completeExceptionally(e);
+                return;
+            }
+            if (snapshot.isEmpty()) {
+                result.complete("");
+                return;
+            }
+            phaseTimers.cancel(chatId);
+            long deadline = gameCore.getPhaseDeadline();
+            long remaining = deadline == 0 ? phaseMillis(gameCore) : Math.max(0, deadline - System.currentTimeMillis());
+            games.remove(chatId);
+            gameCore.reset();
+            result.complete(remaining + "\n" + snapshot);
+        });
+        return result;
+    }
+
+    // Принимает игру, отданную exportGame на другом воркере, и продолжает фазу с того же места
+    CompletableFuture<Void> importGame(long chatId, String exported) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        mailboxes.execute(chatId, () -> {
+            try {
+                GameCore stale = games.findByChat(chatId);
+                if (stale != null) {
+                    phaseTimers.cancel(chatId);
+                    games.remove(chatId);
+                    stale.reset();
+                }
+                int newline = exported.indexOf('\n');
+                long remaining = Long.parseLong(exported.substring(0, newline));
+                GameCore gameCore = games.getOrCreate(chatId);
+                for (GameEvent event : GameJournal.decodeSnapshot(exported.substring(newline + 1))) {
+                    gameCore.adopt(event);
+                }
+                games.indexPlayers(gameCore);
+                if (gameCore.getGameState() == GameCore.GameState.NIGHT || gameCore.getGameState() == GameCore.GameState.DAY) {
+                    gameCore.setPhaseDeadline(System.currentTimeMillis() + remaining);
+                    resumePhase(gameCore, remaining);
+                }
+                result.complete(null);
+            } catch (RuntimeException e) {
+                // Недопринятая игра не должна жить рядом со снапшотом, который ingress отдаст другому воркеру
+                GameCore partial = games.findByChat(chatId);
+                if (partial != null) {
+                    phaseTimers.cancel(chatId);
+                    games.remove(chatId);
+                    partial.reset();
+                }
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    public boolean isAccepting() {
+        return accepting;
+    }
+
+    // Штатная остановка: приём уже остановлен снаружи (polling/webhook). Дочитываем входящие,
+    // замораживаем фазы, пишем handoff и снапшот, дожидаемся исходящих — всё в пределах timeoutMillis
+    public void shutdown(long timeoutMillis) {
+        long started = System.nanoTime();
+        long deadline = started + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        accepting = false;
+        try {
+            while (inbound.getPending() > 0 && System.nanoTime() - deadline < 0) {
+                Thread.sleep(20);
+            }
+            if (inbound.getPending() > 0) {
+                log.warn("{} inbound updates were not processed before shutdown", inbound.getPending());
+            }
+
+            long frozenAt = System.currentTimeMillis();
+            phaseTimers.freeze();
+            try {
+                Handoff.write(dataDir, frozenAt, captureRemaining(frozenAt, deadline));
+                journal.snapshotNow(this::captureGames, Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (Exception e) {
+                log.error("Cannot write handoff, games will resume from journal deadlines", e);
+            }
+
+            if (!outbound.awaitDrained(deadline)) {
+                log.warn("{} outbound messages were not delivered before shutdown", outbound.getQueueSize());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        outbound.shutdown();
+        journal.close();
+        archive.close();
+        stats.close();
+        mailboxes.shutdown();
+        log.info("Shutdown complete in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    // Остаток фазы снимается в очереди игры — после всех уже принятых апдейтов
+    private Map<Long, Long> captureRemaining(long frozenAt, long deadlineNanos) throws Exception {
+        Map<Long, CompletableFuture<Long>> parts = new HashMap<>();
+        for (GameCore gameCore : games.getGames()) {
+            CompletableFuture<Long> part = new CompletableFuture<>();
+            mailboxes.execute(gameCore.getGameChatId(), () -> {
+                GameCore.GameState state = gameCore.getGameState();
+                long phaseDeadline = gameCore.getPhaseDeadline();
+                part.complete(state != GameCore.GameState.NIGHT && state != GameCore.GameState.DAY ? null
+                        : phaseDeadline == 0 ? phaseMillis(gameCore) : Math.max(0, phaseDeadline - frozenAt));
+            });
+            parts.put(gameCore.getGameChatId(), part);
+        }
+        Map<Long, Long> remaining = new HashMap<>();
+        for (Map.Entry<Long, CompletableFuture<Long>> entry : parts.entrySet()) {
+            long wait = Math.max(1, deadlineNanos - System.nanoTime());
+            Long millis = entry.getValue().get(wait, TimeUnit.NANOSECONDS);
+            if (millis != null) remaining.put(entry.getKey(), millis);
+        }
+        return remaining;
+    }
+
+    private List<CompletableFuture<String>> captureGames() {
+        List<CompletableFuture<String>> parts = new ArrayList<>();
+        for (GameCore gameCore : games.getGames()) {
+            CompletableFuture<String> part = new CompletableFuture<>();
+            mailboxes.execute(gameCore.getGameChatId(), () -> part.complete(journal.encodeSnapshot(gameCore)));
+            parts.add(part);
+        }
+        return parts;
+    }
 
     @Override
     public String getBotUsername() {
@@ -23,70 +280,126 @@ public class MafiaBot extends TelegramLongPollingBot {
 
     @Override
     public String getBotToken() {
-        String token = System.getenv("BOT_TOKEN");
-        if (token == null || token.isEmpty()) {
-            Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load();
-            token = dotenv.get("BOT_TOKEN");
-        }
-        return token;
+        return config.get().startup().botToken();
     }
 
     @Override
     public void onUpdateReceived(Update update) {
+        if (!accepting) return;
         if (!update.hasMessage() || !update.getMessage().hasText()) return;
+        Message message = update.getMessage();
+        long userId = message.getFrom().getId();
+        Command command = commands.parse(message.getText());
+        boolean chatter = command.type() == Command.Type.TEXT || command.type() == Command.Type.FOREIGN;
+        // Обычная переписка нужна игре только как последнее слово погибшего — остальное не доходит до очередей игр
+        if (chatter && !games.isAwaitingLastWords(userId)) {
+            ignoredChatter.increment();
+            return;
+        }
+        if (!inbound.tryAcquire(userId, chatter ? InboundGate.Priority.CHATTER : InboundGate.Priority.COMMAND)) return;
+
+        long chatId = message.getChatId();
+        long key = games.mailboxKey(chatId, userId);
+        long received = System.nanoTime();
+        Histogram latency = commandLatency[command.type().ordinal()];
+        mailboxes.execute(key, () -> {
+            try {
+                handleUpdate(update, command);
+            } finally {
+                inbound.release();
+                latency.observeSince(received);
+            }
+        });
+    }
+
+    // Выселение проверяется заново в очереди лобби: за время ожидания туда могли войти или начать игру
+    private void sweepLobbies() {
+        BotConfig current = config.get();
+        long now = System.currentTimeMillis();
+        long ttl = current.lobbyTtl().toMillis();
+        games.idleLobbies(now, ttl, current.maxLobbies()).forEach((chatId, activity) ->
+                mailboxes.execute(chatId, () -> evictLobby(chatId, activity, now - activity >= ttl)));
+    }
+
+    private void evictLobby(long chatId, long activity, boolean expired) {
+        GameCore gameCore = games.findByChat(chatId);
+        if (gameCore == null || gameCore.getGameState() != GameCore.GameState.WAITING
+                || !games.isLobbyIdleSince(chatId, activity)) return;
+        games.remove(chatId);
+        gameCore.reset();
+        (expired ? lobbiesExpired : lobbiesOverLimit).increment();
+        log.info("Closed idle lobby {} ({})", chatId, expired ? "ttl" : "limit");
+        sendMessage(chatId, "⌛ Лобби закрыто: игра так и не началась. Новое лобби: /new");
+    }
+
+    private void handleUpdate(Update update, Command command) {
         long chatId = update.getMessage().getChatId();
         String text = update.getMessage().getText();
         User user = update.getMessage().getFrom();
+        GameCore gameCore = games.resolve(chatId, user.getId());
 
         try {
-            if (text.startsWith("/new")) handleCreateGame(chatId);
-            else if (text.startsWith("/join")) handleJoin(chatId, user);
-            else if (text.startsWith("/start")) handleStartGame(chatId, user.getId());
-            else handleGameAction(chatId, user, text);
+            switch (command.type()) {
+                case NEW -> handleCreateGame(chatId);
+                case JOIN -> handleJoin(chatId, user);
+                case START -> handleStartGame(chatId, user.getId());
+                case ROLES -> handleRoleQuota(chatId, user.getId(), command);
+                case STATS -> handleStats(chatId, user);
+                case TOP -> sendMessage(chatId, stats.getTopText());
+                case TEXT, FOREIGN -> {
+                }
+                default -> {
+                    if (gameCore != null) handleGameAction(gameCore, chatId, user, command);
+                }
+            }
         } catch (Exception e) {
-            sendSafeMessage(chatId, "⛔ Ошибка: " + e.getMessage());
+            sendMessage(chatId, "⛔ Ошибка: " + e.getMessage());
         }
-        if (gameCore.getGameState() != GameCore.GameState.ENDED) {
-            handleLastWords(chatId, user, text);
+        if (gameCore != null && gameCore.getGameState() != GameCore.GameState.ENDED) {
+            handleLastWords(gameCore, user, text);
         }
     }
 
-    private void handleLastWords(long chatId, User user, String text) {
+    private void handleLastWords(GameCore gameCore, User user, String text) {
         Player player = gameCore.getPlayerById(user.getId());
-        if (player != null && !player.isAlive() && !lastWords.containsKey(user.getId())) {
-            lastWords.put(user.getId(), text);
+        if (player != null && !player.isAlive() && gameCore.recordLastWords(user.getId())) {
+            games.lastWordsSaid(user.getId());
             String message = "💀 " + user.getUserName() + " успел сказать:\n" + text;
             long gameChatId = gameCore.getGameChatId();
             if (gameChatId != 0) {
-                sendSafeMessage(gameChatId, message);
+                sendMessage(gameChatId, message);
             }
         }
     }
 
 
-    private void handleCreateGame(long chatId) throws TelegramApiException {
-        sendMessage(chatId, "🎮 Мафия\n\n" + "▫️ /join - Войти в игру\n" + "▫️ /start - Начать игру");
+    private void handleCreateGame(long chatId) {
+        games.getOrCreate(chatId);
+        games.touchLobby(chatId);
+        sendMessage(chatId, "🎮 Мафия\n\n" + "▫️ /join - Войти в игру\n" + "▫️ /start - Начать игру\n"
+                + "▫️ /roles [мафия] [доктора] [комиссары] - Настроить роли\n"
+                + "▫️ /stats - Ваша статистика, /top - Лучшие игроки");
         log.info("Display 'starting' message");
     }
 
-    private void handleJoin(long chatId, User user) throws TelegramApiException {
+    private void handleJoin(long chatId, User user) {
         log.info("Try joining a new player");
+        GameCore gameCore = games.getOrCreate(chatId);
         if (gameCore.getGameState() != GameCore.GameState.WAITING) {
             throw new IllegalStateException("Игра уже началась!");
         }
 
-        gameCore.addPlayer(new Civilian(user.getId(), user.getUserName()));
-
-        if (gameCore.getPlayers().size() == 1) {
-            gameCreators.put(chatId, user.getId());
-        }
+        games.bindPlayer(user.getId(), chatId);
+        gameCore.addPlayer(user.getId(), user.getUserName());
+        games.touchLobby(chatId);
 
         sendMessage(chatId, "✅ " + user.getFirstName() + " присоединился!");
     }
 
-    private void handleStartGame(long chatId, Long userId) throws TelegramApiException {
+    private void handleStartGame(long chatId, Long userId) {
         try {
-            if (!userId.equals(gameCreators.get(chatId))) {
+            GameCore gameCore = games.findByChat(chatId);
+            if (gameCore == null || userId != gameCore.getCreatorId()) {
                 throw new SecurityException("Только создатель лобби может начать игру!");
             }
 
@@ -94,76 +407,151 @@ public class MafiaBot extends TelegramLongPollingBot {
                 sendMessage(chatId, "⛔ Игра уже началась или завершена!");
                 return;
             }
-            gameCore.setGameChatId(chatId);
+            gameCore.setMinPlayers(config.get().rules(chatId).minPlayers());
             gameCore.startGame();
-            notifyRoles();
-            startNightPhase(chatId);
+            games.lobbyStarted(chatId);
+            MessageBatch batch = new MessageBatch();
+            notifyRoles(gameCore, batch);
+            // Без роли игрок не может играть: первая ночь вместе с ролями уходит с гарантией доставки
+            String dedupPrefix = "roles:" + chatId + ":" + gameCore.getShuffleSeed() + ":";
+            startNightPhase(gameCore, batch, (recipient, text) -> sendRole(chatId, gameCore.getPlayerById(recipient).getUsername(),
+                    recipient, text, dedupPrefix + recipient + ":" + text.hashCode()));
         } catch (Exception e) {
-            sendSafeMessage(chatId, "⛔ Ошибка: " + e.getMessage());
+            sendMessage(chatId, "⛔ Ошибка: " + e.getMessage());
+        }
+    }
+
+    private void handleRoleQuota(long chatId, long userId, Command command) {
+        GameCore gameCore = games.findByChat(chatId);
+        if (gameCore == null || gameCore.getGameState() != GameCore.GameState.WAITING) {
+            throw new IllegalStateException("Роли настраиваются в лобби до начала игры!");
+        }
+        if (!command.hasArgument()) {
+            RoleQuota quota = gameCore.getRoleQuota();
+            sendMessage(chatId, "🎭 Раздача ролей: " + (quota != null ? quota : "по числу игроков")
+                    + "\nИзменить: /roles [мафия] [доктора] [комиссары]");
+            return;
+        }
+        if (userId != gameCore.getCreatorId()) {
+            throw new SecurityException("Только создатель лобби может менять роли!");
         }
+        String[] counts = command.argument().split("\\s+");
+        RoleQuota quota;
+        try {
+            quota = new RoleQuota(Integer.parseInt(counts[0]), Integer.parseInt(counts[1]), Integer.parseInt(counts[2]));
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Используйте: /roles [мафия] [доктора] [комиссары]");
+        }
+        gameCore.setRoleQuota(quota);
+        games.touchLobby(chatId);
+        sendMessage(chatId, "✅ Раздача ролей: " + quota);
+    }
+
+    private void handleStats(long chatId, User user) {
+        PlayerStats playerStats = stats.get(user.getId());
+        if (playerStats == null) {
+            sendMessage(chatId, "📊 " + user.getFirstName() + ", у вас пока нет сыгранных партий");
+            return;
+        }
+        StringBuilder sb = new StringBuilder("📊 Статистика ").append(user.getFirstName()).append(":\n")
+                .append("Партий: ").append(playerStats.getGames())
+                .append(", побед: ").append(playerStats.getWins()).append(" (").append(playerStats.getWinRatePercent()).append("%)\n")
+                .append("Выжил: ").append(playerStats.getSurvivalPercent()).append("%\n");
+        for (Role role : Role.values()) {
+            if (playerStats.getGames(role) == 0) continue;
+            sb.append("• ").append(role.getDisplayName()).append(": побед ").append(playerStats.getWins(role))
+                    .append(" из ").append(playerStats.getGames(role)).append('\n');
+        }
+        sendMessage(chatId, sb.toString());
     }
 
-    private void notifyRoles() throws TelegramApiException {
+    private void notifyRoles(GameCore gameCore, MessageBatch batch) {
         for (Player p : gameCore.getPlayers()) {
-            sendMessage(p.getUserId(), "🎭 Ваша роль: " + p.getRole().getDisplayName() + "\n\n" + p.getRoleDescription());
+            batch.add(p.getUserId(), "🎭 Ваша роль: " + p.getRole().getDisplayName() + "\n\n" + p.getRoleDescription());
+        }
+        long[] team = gameCore.getMafiaTeam();
+        if (team.length > 1) {
+            String roster = "🤝 Ваша команда: " + gameCore.getMafiaRoster()
+                    + "\nЖертва выбирается большинством голосов мафии. Чат команды: /team [текст]";
+            for (long userId : team) {
+                batch.add(userId, roster);
+            }
         }
     }
 
-    private void startNightPhase(long chatId) throws TelegramApiException {
+    // Одно сообщение всей живой мафии, кроме отправителя
+    private void relayToMafia(GameCore gameCore, long fromUserId, String text) {
+        for (long userId : gameCore.getMafiaTeam()) {
+            if (userId != fromUserId) sendMessage(userId, text);
+        }
+    }
+
+    private void handleTeamMessage(GameCore gameCore, Player player, Command command) {
+        if (player.getRole() != Role.MAFIA) {
+            sendMessage(player.getUserId(), "⛔ Чат команды доступен только мафии!");
+            return;
+        }
+        if (!command.hasArgument()) {
+            sendMessage(player.getUserId(), "❌ Неверный формат! Используйте: /team [текст]");
+            return;
+        }
+        relayToMafia(gameCore, player.getUserId(), "🔪 " + player.getUsername() + ": " + command.argument());
+    }
+
+    private void startNightPhase(GameCore gameCore, MessageBatch batch, BiConsumer<Long, String> sender) {
+        long chatId = gameCore.getGameChatId();
         if (gameCore.getGameState() == GameCore.GameState.ENDED) {
-            tryEndGame(chatId);
+            batch.flush(sender);
+            tryEndGame(gameCore);
             return;
         }
 
         gameCore.setGameState(GameCore.GameState.NIGHT);
-        sendToAll("🌙 Ночь началась! У вас 40 секунд:");
-        sendRoleSpecificInstructions();
-        startTimer(chatId, 40, () -> startDayPhase(chatId));
+        sendToAll(gameCore, batch, "🌙 Ночь началась! У вас " + phaseSeconds(chatId, GameCore.GameState.NIGHT) + " сек:");
+        sendRoleSpecificInstructions(gameCore, batch);
+        batch.flush(sender);
+        startTimer(gameCore, () -> startDayPhase(gameCore));
     }
 
-    private void startDayPhase(long chatId) {
+    private void startDayPhase(GameCore gameCore) {
+        long chatId = gameCore.getGameChatId();
+        if (gameCore.getGameState() != GameCore.GameState.NIGHT) return;
         try {
             gameCore.resolveNightActions();
-            sendNightResults(chatId);
-
-            String dayMessage = "☀️ День начался! Обсуждение (40 сек):\n" +
-                    "Живые игроки:\n" + gameCore.getAlivePlayersList() +
-                    "\n\nГолосовать: /vote [ник]" +
-                    "\nАнонимное сообщение: /message [текст]";
-            Player commissar = gameCore.getPlayers().stream()
-                    .filter(p -> p.getRole() == Role.COMMISSAR && p.isAlive())
-                    .findFirst()
-                    .orElse(null);
-
-            if (commissar != null && !((Commissar) commissar).isRevealed()) {
-                dayMessage += "\n\nКомиссар может вскрыться: /reveal";
+            sendNightResults(gameCore);
+            if (gameCore.getGameState() == GameCore.GameState.ENDED) {
+                tryEndGame(gameCore);
+                return;
             }
 
-            sendSafeMessage(chatId, dayMessage);
-            startTimer(chatId, 40, () -> endDayPhase(chatId));
+            sendPhaseMessage(chatId, gameCore.getDayAnnouncement(phaseSeconds(chatId, GameCore.GameState.DAY)));
+            startTimer(gameCore, () -> endDayPhase(gameCore));
         } catch (Exception e) {
-            sendSafeMessage(chatId, "Ошибка: " + e.getMessage());
+            sendMessage(chatId, "Ошибка: " + e.getMessage());
         }
     }
 
-    private void endDayPhase(long chatId) {
+    private void endDayPhase(GameCore gameCore) {
+        long chatId = gameCore.getGameChatId();
+        if (gameCore.getGameState() != GameCore.GameState.DAY) return;
         try {
             gameCore.resolveDayVoting();
-            sendDayResults(chatId, new HashMap<>(gameCore.getVotesSnapshot()));
+            sendDayResults(gameCore);
 
 
             if (gameCore.getGameState() == GameCore.GameState.ENDED) {
-                tryEndGame(chatId);
+                tryEndGame(gameCore);
             } else {
 
-                startNightPhase(chatId);
+                startNightPhase(gameCore, new MessageBatch(), this::sendPhaseMessage);
             }
         } catch (Exception e) {
-            sendSafeMessage(chatId, "Ошибка: " + e.getMessage());
+            sendMessage(chatId, "Ошибка: " + e.getMessage());
         }
     }
 
-    private void sendNightResults(long chatId) throws TelegramApiException {
+    private void sendNightResults(GameCore gameCore) {
+        long chatId = gameCore.getGameChatId();
         StringBuilder sb = new StringBuilder("🌃 Ночью:\n");
         Player killed = gameCore.getKilledPlayer();
         Player saved = gameCore.getSavedPlayer();
@@ -172,227 +560,263 @@ public class MafiaBot extends TelegramLongPollingBot {
                     .append(" был атакован, но спасён доктором!");
         } else if (killed != null) {
             sb.append("☠️ Убит: ").append(killed.getUsername());
-            sendSafeMessage(killed.getUserId(), "☠️ Вас убили ночью. Вы выбываете из игры.");
+            games.awaitLastWords(killed.getUserId());
+            sendPhaseMessage(killed.getUserId(), "☠️ Вас убили ночью. Вы выбываете из игры.");
         } else {
             sb.append("Никто не пострадал 🌟");
         }
 
-        sendMessage(chatId, sb.toString());
+        sendPhaseMessage(chatId, sb.toString());
     }
 
 
-    private void sendDayResults(long chatId, Map<String, Integer> votes) throws TelegramApiException {
-        StringBuilder result = new StringBuilder("🗳 Результаты голосования:\n");
-        votes.forEach((player, count) -> result.append("• ").append(player).append(": ").append(count).append(" голосов\n"));
-
+    private void sendDayResults(GameCore gameCore) {
         Player lynched = gameCore.getKilledPlayer();
         if (lynched != null) {
-            result.append("\n☠️ Линчеван: ").append(lynched.getUsername());
-        } else {
-            if (!votes.isEmpty()) {
-                result.append("\n⏭ Ничья! Никто не линчеван");
-            } else {
-                result.append("\n🗣️ Никто не голосовал");
-            }
+            games.awaitLastWords(lynched.getUserId());
         }
-
-        sendMessage(chatId, result.toString());
+        sendPhaseMessage(gameCore.getGameChatId(), gameCore.getDayResults());
     }
-    private void handleGameAction(long chatId, User user, String text) throws TelegramApiException {
+    private void handleGameAction(GameCore gameCore, long chatId, User user, Command command) {
+        if (gameCore.getGameState() == GameCore.GameState.WAITING) return;
         Player player = gameCore.getPlayerById(user.getId());
         if (player == null || !player.isAlive()) {
-            sendSafeMessage(chatId, "⚠️ Мертвые игроки не могут выполнять действия");
+            sendMessage(chatId, "⚠️ Мертвые игроки не могут выполнять действия");
+            return;
+        }
+        if (command.type() == Command.Type.TEAM) {
+            handleTeamMessage(gameCore, player, command);
             return;
         }
 
         switch (gameCore.getGameState()) {
-            case NIGHT -> handleNightAction(player, text);
-            case DAY -> handleDayAction(chatId, player, text);
+            case NIGHT -> handleNightAction(gameCore, player, command);
+            case DAY -> handleDayAction(gameCore, player, command);
         }
     }
 
-    private void handleNightAction(Player player, String text) {
-        String[] parts = text.split(" ", 2);
-        if (parts.length < 2) {
-            sendSafeMessage(player.getUserId(), "❌ Неверный формат! Используйте: /команда [ник]");
+    private void handleNightAction(GameCore gameCore, Player player, Command command) {
+        Command.Type type = command.type();
+        if (type != Command.Type.KILL && type != Command.Type.SAVE && type != Command.Type.CHECK) return;
+        if (!command.hasArgument()) {
+            sendMessage(player.getUserId(), "❌ Неверный формат! Используйте: " + type.getName() + " [ник]");
             return;
         }
 
-        String command = parts[0].toLowerCase();
-        String targetUsername = parts[1];
+        String targetUsername = command.argument();
         Player target = gameCore.findPlayerByName(targetUsername);
         if (target == null) {
-            sendSafeMessage(player.getUserId(), "❌ Игрок '" + targetUsername + "' не найден!");
+            sendMessage(player.getUserId(), "❌ Игрок '" + targetUsername + "' не найден!");
             return;
         }
         if (!target.isAlive()) {
-            sendSafeMessage(player.getUserId(), "❌ Игрок '" + targetUsername + "' уже мертв!");
+            sendMessage(player.getUserId(), "❌ Игрок '" + targetUsername + "' уже мертв!");
             return;
         }
 
-        switch (command) {
-            case "/kill":
+        switch (type) {
+            case KILL:
                 if (player.getRole() != Role.MAFIA) {
-                    sendSafeMessage(player.getUserId(), "⛔ Только мафия может убивать!");
+                    sendMessage(player.getUserId(), "⛔ Только мафия может убивать!");
                     return;
                 }
                 gameCore.processNightAction(player, target);
-                sendSafeMessage(player.getUserId(), "✅ Вы выбрали жертву: " + targetUsername);
+                sendMessage(player.getUserId(), "✅ Вы выбрали жертву: " + targetUsername);
+                Player choice = gameCore.getMafiaChoice();
+                relayToMafia(gameCore, player.getUserId(), "🔪 " + player.getUsername() + " голосует за " + targetUsername
+                        + ". Выбор мафии сейчас: " + (choice != null ? choice.getUsername() : "нет согласия"));
                 break;
 
-            case "/save":
+            case SAVE:
                 if (player.getRole() != Role.DOCTOR) {
-                    sendSafeMessage(player.getUserId(), "⛔ Только доктор может лечить!");
+                    sendMessage(player.getUserId(), "⛔ Только доктор может лечить!");
                     return;
                 }
                 gameCore.processNightAction(player, target);
-                sendSafeMessage(player.getUserId(), "✅ Вы будете лечить: " + targetUsername);
+                sendMessage(player.getUserId(), "✅ Вы будете лечить: " + targetUsername);
                 break;
 
-            case "/check":
+            case CHECK:
                 if (player.getRole() != Role.COMMISSAR) {
-                    sendSafeMessage(player.getUserId(), "⛔ Только комиссар может проверять!");
+                    sendMessage(player.getUserId(), "⛔ Только комиссар может проверять!");
                     return;
                 }
                 gameCore.processNightAction(player, target);
                 String result = ((Commissar) player).checkPlayer(target);
-                sendSafeMessage(player.getUserId(), result);
+                sendMessage(player.getUserId(), result);
                 break;
         }
+        completePhaseIfReady(gameCore);
     }
 
 
-    private void handleDayAction(long chatId, Player player, String text) {
-        if (text.startsWith("/vote ")) {
-            String[] parts = text.split(" ", 2);
-            if (parts.length < 2) {
-                sendSafeMessage(player.getUserId(), "❌ Неверный формат! Используйте: /vote [ник]");
+    private void handleDayAction(GameCore gameCore, Player player, Command command) {
+        if (command.type() == Command.Type.VOTE) {
+            if (!command.hasArgument()) {
+                sendMessage(player.getUserId(), "❌ Неверный формат! Используйте: /vote [ник]");
                 return;
             }
 
-            String targetUsername = parts[1];
+            String targetUsername = command.argument();
             Player target = gameCore.findPlayerByName(targetUsername);
             if (target == null) {
-                sendSafeMessage(player.getUserId(), "❌ Игрок '" + targetUsername + "' не найден!");
+                sendMessage(player.getUserId(), "❌ Игрок '" + targetUsername + "' не найден!");
                 return;
             }
             if (!target.isAlive()) {
-                sendSafeMessage(player.getUserId(), "❌ Игрок '" + targetUsername + "' уже мертв!");
+                sendMessage(player.getUserId(), "❌ Игрок '" + targetUsername + "' уже мертв!");
                 return;
             }
 
             gameCore.addVote(player.getUserId(), targetUsername);
-            sendSafeMessage(player.getUserId(), "✅ Ваш голос против " + targetUsername + " учтен!");
+            sendMessage(player.getUserId(), "✅ Ваш голос против " + targetUsername + " учтен! Сейчас у него голосов: "
+                    + gameCore.getVoteTally().votesFor(target));
+            completePhaseIfReady(gameCore);
         }
-        else if (text.startsWith("/message ")) {
-            handleAnonymousMessage(chatId, player, text);
+        else if (command.type() == Command.Type.MESSAGE) {
+            handleAnonymousMessage(gameCore, player, command);
         }
-        else if (text.equals("/reveal")) {
-            handleRevealCommand(chatId, player);
+        else if (command.type() == Command.Type.REVEAL) {
+            handleRevealCommand(gameCore, player);
         }
     }
-    private void handleRevealCommand(long chatId, Player player) {
+    private void handleRevealCommand(GameCore gameCore, Player player) {
         if (player.getRole() != Role.COMMISSAR) {
-            sendSafeMessage(player.getUserId(), "⛔ Только комиссар может использовать эту команду!");
+            sendMessage(player.getUserId(), "⛔ Только комиссар может использовать эту команду!");
             return;
         }
         Commissar commissar = (Commissar) player;
         if (commissar.isRevealed()) {
-            sendSafeMessage(player.getUserId(), "⛔ Вы уже вскрылись ранее!");
+            sendMessage(player.getUserId(), "⛔ Вы уже вскрылись ранее!");
             return;
         }
-        commissar.reveal();
+        gameCore.revealCommissar(commissar);
         long gameChatId = gameCore.getGameChatId();
         if (gameChatId != 0) {
-            sendSafeMessage(gameChatId, "🕵️♂️ Игрок " + player.getUsername() + " вскрывается и оказывается комиссаром!");
+            sendMessage(gameChatId, "🕵️♂️ Игрок " + player.getUsername() + " вскрывается и оказывается комиссаром!");
         }
     }
-    private void handleAnonymousMessage(long chatId, Player player, String text) {
-        if (text.length() <= "/message ".length()) {
-            sendSafeMessage(player.getUserId(), "❌ Неверный формат! Используйте: /message [текст]");
+    private void handleAnonymousMessage(GameCore gameCore, Player player, Command command) {
+        if (!command.hasArgument()) {
+            sendMessage(player.getUserId(), "❌ Неверный формат! Используйте: /message [текст]");
             return;
         }
 
-        String message = text.substring("/message ".length()).trim();
-        if (message.isEmpty()) {
-            sendSafeMessage(player.getUserId(), "❌ Сообщение не может быть пустым!");
-            return;
-        }
+        String message = command.argument();
 
         long gameChatId = gameCore.getGameChatId();
         if (gameChatId != 0) {
-            sendSafeMessage(gameChatId, "💬 Анонимное сообщение: " + message);
+            sendMessage(gameChatId, "💬 Анонимное сообщение: " + message);
         }
     }
 
-    private void startTimer(long chatId, int seconds, Runnable callback) {
-        if (gameTimers.containsKey(chatId)) {
-            gameTimers.get(chatId).cancel();
+    // Вызывается из очереди игры. Если таймер уже сработал, его колбэк стоит в той же очереди и закроет фазу сам
+    private void completePhaseIfReady(GameCore gameCore) {
+        if (!gameCore.isPhaseComplete() || !phaseTimers.cancel(gameCore.getGameChatId())) return;
+        phasesCompletedEarly.increment();
+        if (gameCore.getGameState() == GameCore.GameState.NIGHT) {
+            startDayPhase(gameCore);
+        } else {
+            endDayPhase(gameCore);
         }
+    }
 
-        Timer timer = new Timer();
-        timer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                callback.run();
-                gameTimers.remove(chatId);
-            }
-        }, seconds * 1000L);
+    private void startTimer(GameCore gameCore, Runnable callback) {
+        long phaseMillis = phaseMillis(gameCore);
+        gameCore.setPhaseDeadline(System.currentTimeMillis() + phaseMillis);
+        armTimer(gameCore, phaseMillis, callback);
+    }
+
+    // Длительность фаз берётся из текущего снимка настроек при каждом старте фазы — перечитка действует со следующей
+    private long phaseMillis(GameCore gameCore) {
+        return config.get().rules(gameCore.getGameChatId()).phase(gameCore.getGameState()).toMillis();
+    }
+
+    private long phaseSeconds(long chatId, GameCore.GameState state) {
+        return Math.max(1, config.get().rules(chatId).phase(state).toSeconds());
+    }
+
+    private void armTimer(GameCore gameCore, long delayMillis, Runnable callback) {
+        long chatId = gameCore.getGameChatId();
+        phaseTimers.schedule(chatId, delayMillis, () -> mailboxes.execute(chatId, callback));
+    }
 
-        gameTimers.put(chatId, timer);
+    private void sendToAll(GameCore gameCore, MessageBatch batch, String message) {
+        gameCore.getPlayers().stream().filter(Player::isAlive).forEach(p -> batch.add(p.getUserId(), message));
     }
 
-    private void sendToAll(String message) {
+    private void sendRoleSpecificInstructions(GameCore gameCore, MessageBatch batch) {
+        String alivePlayers = "Alive players:\n" + gameCore.getAlivePlayersList();
         gameCore.getPlayers().stream().filter(Player::isAlive).forEach(p -> {
-            try {
-                sendMessage(p.getUserId(), message);
-            } catch (TelegramApiException ignored) {
+            batch.add(p.getUserId(), alivePlayers);
+            if (p.getRole() == Role.MAFIA) {
+                batch.add(p.getUserId(), "🔪 Выберите жертву: /kill [имя]");
+            }
+            if (p.getRole() == Role.DOCTOR) {
+                batch.add(p.getUserId(), "💉 Кого спасти: /save [имя]");
+            }
+            if (p.getRole() == Role.COMMISSAR) {
+                batch.add(p.getUserId(), "🕵️ Кого проверить: /check [имя]");
             }
         });
     }
 
-    private void sendRoleSpecificInstructions() {
-        gameCore.getPlayers().stream().filter(Player::isAlive).forEach(p -> {
-            try {
-                sendMessage(p.getUserId(), "Alive players:\n" + gameCore.getAlivePlayersList());
-                if (p.getRole() == Role.MAFIA) {
-                    sendMessage(p.getUserId(), "🔪 Выберите жертву: /kill [имя]");
-                }
-                if (p.getRole() == Role.DOCTOR) {
-                    sendMessage(p.getUserId(), "💉 Кого спасти: /save [имя]");
-                }
-                if (p.getRole() == Role.COMMISSAR) {
-                    sendMessage(p.getUserId(), "🕵️ Кого проверить: /check [имя]");
-                }
-            } catch (TelegramApiException ignored) {
+    public CompletableFuture<Message> sendMessage(long chatId, String text) {
+        return sendMessage(chatId, text, MessageDispatcher.Priority.NORMAL);
+    }
+
+    public CompletableFuture<Message> sendPhaseMessage(long chatId, String text) {
+        return sendMessage(chatId, text, MessageDispatcher.Priority.HIGH);
+    }
+
+    private CompletableFuture<Message> sendMessage(long chatId, String text, MessageDispatcher.Priority priority) {
+        return outbound.submit(SendMessage.builder().chatId(String.valueOf(chatId)).text(text).build(), priority);
+    }
+
+    // Роль не дошла и повторять бессмысленно (бот заблокирован, личка не открыта) — говорим об этом в чате игры
+    private void sendRole(long gameChatId, String username, long recipient, String text, String dedupKey) {
+        sendCritical(recipient, text, dedupKey).whenComplete((message, error) -> {
+            if (error != null && accepting) {
+                sendMessage(gameChatId, "⚠️ " + username + " не получил роль: бот не может написать ему в личку. "
+                        + "Откройте чат с ботом, чтобы получать ходы");
             }
         });
     }
 
-    public void sendMessage(long chatId, String text) throws TelegramApiException {
-        execute(SendMessage.builder().chatId(String.valueOf(chatId)).text(text).build());
+    private CompletableFuture<Message> sendCritical(long chatId, String text, String dedupKey) {
+        return outbound.submitCritical(SendMessage.builder().chatId(String.valueOf(chatId)).text(text).build(), dedupKey);
+    }
+
+    private CompletableFuture<Message> executeOutbound(SendMessage message) {
+        try {
+            return executeAsync(message);
+        } catch (TelegramApiException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void recordStats(GameCore gameCore) {
+        boolean mafiaWin = gameCore.isMafiaWin();
+        List<StatsStore.Result> results = new ArrayList<>(gameCore.getPlayers().size());
+        for (Player p : gameCore.getPlayers()) {
+            boolean won = (p.getRole() == Role.MAFIA) == mafiaWin;
+            results.add(new StatsStore.Result(p.getUserId(), p.getUsername(), p.getRole(), won, p.isAlive()));
+        }
+        stats.record(results);
     }
 
-    private void tryEndGame(long chatId) {
+    private void tryEndGame(GameCore gameCore) {
+        long chatId = gameCore.getGameChatId();
         if (gameCore.getGameState() == GameCore.GameState.ENDED) {
             String result = "🏁 Игра окончена! " + gameCore.getDetailedGameResult();
-            long gameChatId = gameCore.getGameChatId();
-            if (gameChatId != 0) {
-                sendSafeMessage(gameChatId, result);
+            if (chatId != 0) {
+                sendPhaseMessage(chatId, result);
             }
 
+            recordStats(gameCore);
+            games.remove(chatId);
             gameCore.reset();
-            if (gameTimers.containsKey(chatId)) {
-                gameTimers.get(chatId).cancel();
-                gameTimers.remove(chatId);
-            }
-        }
-    }
-
-    private void sendSafeMessage(long chatId, String text) {
-        try {
-            sendMessage(chatId, text);
-        } catch (TelegramApiException ignored) {
+            phaseTimers.cancel(chatId);
         }
     }
 }
\ No newline at end of file
@@ -1,25 +1,111 @@
 import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.generics.BotSession;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.Objects;
+
 public class Main {
+    private static final Path CONFIG_FILE = Path.of(Objects.requireNonNullElse(System.getenv("CONFIG_FILE"), "mafia.properties"));
+    private static final BotConfig CONFIG;
+
     static {
+        // Настройки читаются до первого логгера: уровень логов slf4j-simple задаётся только при старте
+        try {
+            CONFIG = BotConfig.load(CONFIG_FILE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
         System.setProperty("org.slf4j.simpleLogger.showDateTime", "true"); //log with time
         System.setProperty("org.slf4j.simpleLogger.dateTimeFormat", "HH:mm:ss"); // time format
-        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "debug");
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", CONFIG.startup().logLevel());
     }
 
     private static final Logger log = LoggerFactory.getLogger(Main.class);
 
     public static void main(String[] args) {
         try {
-            TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
-            botsApi.registerBot(new MafiaBot());
+            ConfigWatcher config = new ConfigWatcher(CONFIG, CONFIG_FILE);
+            BotConfig.Startup startup = CONFIG.startup();
+            String mode = startup.botMode();
+            long shutdownMillis = startup.shutdownTimeoutSeconds() * 1000L;
+            if ("ingress".equalsIgnoreCase(mode)) {
+                startIngress(startup);
+                return;
+            }
+
+            MafiaBot bot = new MafiaBot(config);
+            bot.recoverGames();
+            config.start();
+            if (startup.metricsPort() > 0) {
+                bot.getMetrics().serve(startup.metricsBind(), startup.metricsPort());
+            }
+            Runnable stopIntake;
+            if ("webhook".equalsIgnoreCase(mode)) {
+                WebhookServer server = startWebhook(bot, startup);
+                stopIntake = server::stop;
+            } else if ("worker".equalsIgnoreCase(mode)) {
+                // Апдейты приходят от ingress; при остановке он раздаёт наши игры остальным воркерам
+                PartitionWorker worker = new PartitionWorker(bot, startup.ingressAddress(), startup.workerId());
+                bot.attachPartition(worker);
+                worker.start();
+                stopIntake = () -> worker.leave(shutdownMillis / 2);
+            } else {
+                TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
+                BotSession session = botsApi.registerBot(bot);
+                stopIntake = session::stop;
+            }
+            // SIGTERM при передеплое: перестаём брать апдейты, дочищаем очереди и оставляем handoff следующему процессу
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                log.info("Stopping the bot...");
+                stopIntake.run();
+                config.stop();
+                bot.shutdown(shutdownMillis);
+                bot.getMetrics().stop();
+            }, "shutdown"));
             log.info("The bot is running."); //logger
-        } catch (TelegramApiException e) {
+        } catch (TelegramApiException | IOException e) {
             log.error("Cannot run", e);
         }
     }
-}
\ No newline at end of file
+
+    // Единственный потребитель long polling: раскладывает апдейты по воркерам (BOT_MODE=worker)
+    private static void startIngress(BotConfig.Startup startup) throws TelegramApiException, IOException {
+        Ingress ingress = new Ingress(startup.ingressListen(), startup.botToken());
+        ingress.start();
+        if (startup.metricsPort() > 0) {
+            ingress.getMetrics().serve(startup.metricsBind(), startup.metricsPort());
+        }
+        BotSession session = new TelegramBotsApi(DefaultBotSession.class).registerBot(ingress);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            session.stop();
+            ingress.stop();
+            ingress.getMetrics().stop();
+        }, "shutdown"));
+        log.info("The ingress is running.");
+    }
+
+    private static WebhookServer startWebhook(MafiaBot bot, BotConfig.Startup startup) throws TelegramApiException, IOException {
+        String secret = startup.webhookSecret();
+        String path = startup.webhookPath();
+        WebhookServer server = new WebhookServer(bot, secret);
+
+        // Без WEBHOOK_URL сервер слушает только loopback — удобно слать записанные Update через curl
+        String url = startup.webhookUrl();
+        server.start(url.isEmpty() ? new InetSocketAddress(InetAddress.getLoopbackAddress(), startup.port())
+                : new InetSocketAddress(startup.port()), path);
+        if (!url.isEmpty()) {
+            bot.execute(SetWebhook.builder().url(url + path).secretToken(secret).build());
+            log.info("Webhook registered at {}", url + path);
+        }
+        return server;
+    }
+}
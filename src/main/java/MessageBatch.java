@@ -0,0 +1,53 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+// Копит сообщения одной смены фазы и отправляет каждому получателю одним SendMessage
+public class MessageBatch {
+    public static final int MAX_MESSAGE_LENGTH = 4096;
+    private static final String SEPARATOR = "\n\n";
+
+    private final Map<Long, StringBuilder> pending = new LinkedHashMap<>();
+
+    public void add(long chatId, String text) {
+        StringBuilder sb = pending.get(chatId);
+        if (sb == null) {
+            pending.put(chatId, new StringBuilder(text));
+        } else {
+            sb.append(SEPARATOR).append(text);
+        }
+    }
+
+    public boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    public void flush(BiConsumer<Long, String> sender) {
+        for (Map.Entry<Long, StringBuilder> entry : pending.entrySet()) {
+            StringBuilder text = entry.getValue();
+            int start = 0;
+            while (text.length() - start > MAX_MESSAGE_LENGTH) {
+                int end = splitPoint(text, start);
+                sender.accept(entry.getKey(), text.substring(start, end));
+                start = end;
+                while (start < text.length() && text.charAt(start) == '\n') start++;
+            }
+            if (start < text.length()) {
+                sender.accept(entry.getKey(), text.substring(start));
+            }
+        }
+        pending.clear();
+    }
+
+    // Режем по границе сообщений, затем по строке, в крайнем случае — по символу
+    private static int splitPoint(StringBuilder text, int start) {
+        int limit = start + MAX_MESSAGE_LENGTH;
+        int cut = text.lastIndexOf(SEPARATOR, limit - SEPARATOR.length());
+        if (cut <= start) cut = text.lastIndexOf("\n", limit - 1);
+        if (cut <= start) {
+            cut = limit;
+            if (Character.isHighSurrogate(text.charAt(cut - 1))) cut--;
+        }
+        return cut;
+    }
+}
@@ -0,0 +1,323 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+public class MessageDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(Main.class);
+
+    // Лимиты из Bot API FAQ: ~30 сообщений/с на бота, 1/с в личку, 20/мин в группу
+    private static final int GLOBAL_PER_SECOND = 30;
+    private static final int PRIVATE_BURST = 3;
+    private static final int GROUP_PER_MINUTE = 20;
+    private static final int GROUP_BURST = 5;
+
+    // Повторы: сеть и 5xx — экспоненциально с джиттером, 429 — через retry_after из ответа
+    private static final long BACKOFF_BASE_MILLIS = 500;
+    private static final long BACKOFF_MAX_MILLIS = 30_000;
+    private static final long DEDUP_WINDOW_MINUTES = 10;
+
+    // CRITICAL — доставка хотя бы один раз (роли): мимо лимита очереди, повторяется без счёта, пока процесс жив.
+    // Частоту повторов во время сбоя API держит circuit breaker; сдаётся только на постоянной ошибке (400/403)
+    public enum Priority {
+        CRITICAL(Integer.MAX_VALUE), HIGH(5), NORMAL(3);
+
+        private final int maxAttempts;
+
+        Priority(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+    }
+
+    private enum Failure {RETRY_AFTER, TRANSIENT, PERMANENT}
+
+    private final Function<SendMessage, CompletableFuture<Message>> sender;
+    private final int capacity;
+    private final boolean rateLimited;
+    private final PriorityBlockingQueue<Outbound> queue = new PriorityBlockingQueue<>();
+    private final AtomicInteger pending = new AtomicInteger(); // приняты, но ещё не отправлены: в очереди, на линии чата, ждут повтора
+    private final AtomicInteger inFlight = new AtomicInteger(); // взяты из очереди, но ещё не отправлены до конца
+    private final AtomicLong sequence = new AtomicLong();
+    private final TokenBucket globalBucket = new TokenBucket(GLOBAL_PER_SECOND, 1, TimeUnit.SECONDS, GLOBAL_PER_SECOND);
+    private final Map<Long, ChatLane> chatLanes = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Message>> critical = new ConcurrentHashMap<>(); // ключ дедупликации → доставка
+    private final CircuitBreaker breaker;
+    private final ScheduledExecutorService delayed;
+    private final Thread worker;
+    private final Histogram sendLatency;
+    private final LongAdder sendFailures;
+    private final LongAdder dropped;
+    private final LongAdder retriedAfter;
+    private final LongAdder retriedTransient;
+    private final LongAdder deduplicated;
+    private volatile boolean running = true;
+
+    public MessageDispatcher(Function<SendMessage, CompletableFuture<Message>> sender, int capacity, boolean rateLimited,
+                             Metrics metrics) {
+        this(sender, capacity, rateLimited, metrics, new CircuitBreaker(5, 10, TimeUnit.SECONDS));
+    }
+
+    MessageDispatcher(Function<SendMessage, CompletableFuture<Message>> sender, int capacity, boolean rateLimited,
+                      Metrics metrics, CircuitBreaker breaker) {
+        this.sender = sender;
+        this.breaker = breaker;
+        this.capacity = capacity;
+        this.rateLimited = rateLimited;
+        this.sendLatency = metrics.histogram("mafia_outbound_send_seconds", "");
+        this.sendFailures = metrics.counter("mafia_outbound_failures_total", "");
+        this.dropped = metrics.counter("mafia_outbound_dropped_total", "");
+        this.retriedAfter = metrics.counter("mafia_outbound_retries_total", "reason=\"retry_after\"");
+        this.retriedTransient = metrics.counter("mafia_outbound_retries_total", "reason=\"transient\"");
+        this.deduplicated = metrics.counter("mafia_outbound_deduplicated_total", "");
+        metrics.gauge("mafia_outbound_queue_size", "", pending::get);
+        metrics.gauge("mafia_outbound_circuit_open", "", () -> breaker.getState() == CircuitBreaker.State.CLOSED ? 0 : 1);
+        this.delayed = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "outbound-delay");
+            t.setDaemon(true);
+            return t;
+        });
+        this.delayed.scheduleAtFixedRate(this::evictIdleLanes, 1, 1, TimeUnit.MINUTES);
+        this.worker = new Thread(this::dispatchLoop, "outbound-dispatcher");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public CompletableFuture<Message> submit(SendMessage message, Priority priority) {
+        CompletableFuture<Message> result = new CompletableFuture<>();
+        if (pending.incrementAndGet() > capacity) {
+            pending.decrementAndGet();
+            dropped.increment();
+            log.warn("Outbound queue is full, dropping message to {}", message.getChatId());
+            result.completeExceptionally(new RejectedExecutionException("Outbound queue is full"));
+            return result;
+        }
+        queue.add(new Outbound(Long.parseLong(message.getChatId()), message, priority, sequence.incrementAndGet(), result, 1));
+        return result;
+    }
+
+    // Хотя бы один раз: не выбрасывается при переполнении и повторяется до успеха. Сообщение с тем же ключом,
+    // пока первое в пути или доставлено меньше DEDUP_WINDOW_MINUTES назад, второй раз не уходит —
+    // вызывающий получает ту же доставку. Окно отсчитывается от завершения, так что повторы его не съедают
+    public CompletableFuture<Message> submitCritical(SendMessage message, String dedupKey) {
+        CompletableFuture<Message> result = new CompletableFuture<>();
+        CompletableFuture<Message> existing = critical.putIfAbsent(dedupKey, result);
+        if (existing != null) {
+            deduplicated.increment();
+            return existing;
+        }
+        result.whenComplete((m, error) -> delayed.schedule(() -> critical.remove(dedupKey, result),
+                DEDUP_WINDOW_MINUTES, TimeUnit.MINUTES));
+        pending.incrementAndGet();
+        queue.add(new Outbound(Long.parseLong(message.getChatId()), message, Priority.CRITICAL, sequence.incrementAndGet(),
+                result, 1));
+        return result;
+    }
+
+    public int getQueueSize() {
+        return pending.get();
+    }
+
+    // Ждёт, пока очередь и отправки в полёте опустеют; false — не успели до дедлайна
+    public boolean awaitDrained(long deadlineNanos) throws InterruptedException {
+        while (pending.get() > 0 || inFlight.get() > 0) {
+            if (System.nanoTime() - deadlineNanos > 0) return false;
+            Thread.sleep(20);
+        }
+        return true;
+    }
+
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+        delayed.shutdown();
+    }
+
+    // В очереди только сообщения, которые можно отправить сейчас. Упёршееся в лимит своего чата ждёт на линии
+    // этого чата и глобальный лимит не трогает: занятая группа не задерживает остальных получателей
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                // Ждём глобальный токен до выбора сообщения, чтобы при перегрузке HIGH обгонял NORMAL
+                long wait = rateLimited ? globalBucket.nanosUntilAvailable(System.nanoTime()) : 0;
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                // Во время сбоя API сообщения копятся в очереди, а не сгорают на повторах
+                long blocked = breaker.nanosUntilRetry(System.nanoTime());
+                if (blocked > 0) {
+                    LockSupport.parkNanos(blocked);
+                    continue;
+                }
+                Outbound next = queue.take();
+                if (rateLimited && !laneFor(next.chatId).admit(next, System.nanoTime())) {
+                    continue;
+                }
+                // Пробу полуоткрытого breaker берём только перед самой отправкой: проба, выданная сообщению,
+                // которое осталось ждать на линии чата, не завершилась бы никогда. Отказ здесь значит, что
+                // пока мы ждали очередь, неудачная отправка снова разомкнула цепь
+                if (!breaker.tryAcquire(System.nanoTime())) {
+                    queue.add(next);
+                    continue;
+                }
+                // Глобальный токен берётся только в момент отправки; дождались его выше, и забираем его мы одни
+                if (rateLimited) {
+                    globalBucket.reserve(System.nanoTime());
+                }
+                inFlight.incrementAndGet();
+                pending.decrementAndGet();
+                send(next);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Outbound dispatcher error", e);
+            }
+        }
+    }
+
+    private void send(Outbound outbound) {
+        long started = System.nanoTime();
+        try {
+            sender.apply(outbound.message).whenComplete((message, error) -> {
+                sendLatency.observeSince(started);
+                if (error != null) {
+                    onFailure(outbound, error);
+                } else {
+                    breaker.onSuccess();
+                    outbound.result.complete(message);
+                }
+                inFlight.decrementAndGet();
+            });
+        } catch (RuntimeException e) {
+            onFailure(outbound, e);
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void onFailure(Outbound outbound, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        Failure failure = classify(cause);
+        long now = System.nanoTime();
+        if (failure == Failure.TRANSIENT) {
+            breaker.onFailure(now);
+        } else {
+            breaker.onSuccess();
+        }
+        if (failure == Failure.PERMANENT || outbound.attempt >= outbound.priority.maxAttempts || !running) {
+            sendFailures.increment();
+            log.warn("Failed to send message to {} after {} attempts: {}", outbound.chatId, outbound.attempt, cause.getMessage());
+            outbound.result.completeExceptionally(cause);
+            return;
+        }
+
+        long delayMillis;
+        if (failure == Failure.RETRY_AFTER) {
+            retriedAfter.increment();
+            delayMillis = TimeUnit.SECONDS.toMillis(((TelegramApiRequestException) cause).getParameters().getRetryAfter())
+                    + ThreadLocalRandom.current().nextLong(250);
+            if (rateLimited) {
+                laneFor(outbound.chatId).bucket.pushBack(now + TimeUnit.MILLISECONDS.toNanos(delayMillis));
+            }
+        } else {
+            retriedTransient.increment();
+            long backoff = Math.min(BACKOFF_MAX_MILLIS, BACKOFF_BASE_MILLIS << Math.min(outbound.attempt - 1, 16));
+            delayMillis = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        }
+        log.debug("Retrying message to {} in {} ms (attempt {}): {}", outbound.chatId, delayMillis, outbound.attempt, cause.getMessage());
+        // Ждущий повтора считается в очереди, чтобы остановка его дождалась
+        pending.incrementAndGet();
+        delayed.schedule(() -> queue.add(outbound.retry()), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static Failure classify(Throwable error) {
+        if (error instanceof TelegramApiRequestException request && request.getErrorCode() != null) {
+            int code = request.getErrorCode();
+            if (code == 429) {
+                boolean hasRetryAfter = request.getParameters() != null && request.getParameters().getRetryAfter() != null;
+                return hasRetryAfter ? Failure.RETRY_AFTER : Failure.TRANSIENT;
+            }
+            // 400/403: неверный запрос или бот заблокирован — повтор не поможет
+            return code >= 500 ? Failure.TRANSIENT : Failure.PERMANENT;
+        }
+        // Без кода ответа — сеть, таймаут, пул executeAsync
+        return error instanceof TelegramApiException || error instanceof RejectedExecutionException
+                || error instanceof IOException ? Failure.TRANSIENT : Failure.PERMANENT;
+    }
+
+    private ChatLane laneFor(long chatId) {
+        return chatLanes.computeIfAbsent(chatId, id -> new ChatLane(id < 0
+                ? new TokenBucket(GROUP_PER_MINUTE, 1, TimeUnit.MINUTES, GROUP_BURST)
+                : new TokenBucket(1, 1, TimeUnit.SECONDS, PRIVATE_BURST)));
+    }
+
+    private void evictIdleLanes() {
+        long now = System.nanoTime();
+        chatLanes.values().removeIf(lane -> lane.isIdle(now));
+    }
+
+    // Лимит одного чата: сообщения, которым не хватило его токена, ждут здесь по приоритету,
+    // а по таймеру в общую очередь возвращается лучшее из них
+    private class ChatLane {
+        private final TokenBucket bucket;
+        private final PriorityQueue<Outbound> waiting = new PriorityQueue<>();
+        private boolean wakeScheduled;
+
+        ChatLane(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+
+        // true — токен чата взят, можно отправлять; false — сообщение осталось ждать на линии
+        synchronized boolean admit(Outbound outbound, long now) {
+            if (!wakeScheduled && bucket.tryAcquire(now)) {
+                if (!waiting.isEmpty()) scheduleWake(now);
+                return true;
+            }
+            waiting.add(outbound);
+            if (!wakeScheduled) scheduleWake(now);
+            return false;
+        }
+
+        private void scheduleWake(long now) {
+            wakeScheduled = true;
+            delayed.schedule(this::wake, bucket.nanosUntilAvailable(now), TimeUnit.NANOSECONDS);
+        }
+
+        private void wake() {
+            Outbound next;
+            synchronized (this) {
+                wakeScheduled = false;
+                next = waiting.poll();
+            }
+            if (next != null) queue.add(next);
+        }
+
+        synchronized boolean isIdle(long now) {
+            return waiting.isEmpty() && !wakeScheduled && bucket.isIdle(now);
+        }
+    }
+
+    private record Outbound(long chatId, SendMessage message, Priority priority, long seq,
+                            CompletableFuture<Message> result, int attempt) implements Comparable<Outbound> {
+        Outbound retry() {
+            return new Outbound(chatId, message, priority, seq, result, attempt + 1);
+        }
+
+        @Override
+        public int compareTo(Outbound other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(seq, other.seq);
+        }
+    }
+}
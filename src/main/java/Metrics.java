@@ -0,0 +1,118 @@
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Метрики в формате Prometheus. Счётчики и гистограммы создаются один раз и кэшируются вызывающим кодом,
+// гауджи считаются только в момент скрейпа
+public class Metrics {
+    private static final Logger log = LoggerFactory.getLogger(Main.class);
+    private static final String[] BUCKET_LABELS = new String[Histogram.BUCKETS_SECONDS.length];
+
+    static {
+        for (int i = 0; i < BUCKET_LABELS.length; i++) {
+            BUCKET_LABELS[i] = "le=\"" + BigDecimal.valueOf(Histogram.BUCKETS_SECONDS[i]).stripTrailingZeros().toPlainString() + "\"";
+        }
+    }
+
+    private final Map<String, Map<String, Histogram>> histograms = new ConcurrentSkipListMap<>(); // имя → метки → гистограмма
+    private final Map<String, Map<String, LongAdder>> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, Map<String, LongSupplier>> gauges = new ConcurrentSkipListMap<>();
+    private HttpServer server;
+
+    public Histogram histogram(String name, String labels) {
+        return histograms.computeIfAbsent(name, n -> new ConcurrentSkipListMap<>())
+                .computeIfAbsent(labels, l -> new Histogram());
+    }
+
+    public LongAdder counter(String name, String labels) {
+        return counters.computeIfAbsent(name, n -> new ConcurrentSkipListMap<>())
+                .computeIfAbsent(labels, l -> new LongAdder());
+    }
+
+    public void gauge(String name, String labels, LongSupplier value) {
+        gauges.computeIfAbsent(name, n -> new ConcurrentSkipListMap<>()).put(labels, value);
+    }
+
+    public String scrape() {
+        StringBuilder sb = new StringBuilder();
+        counters.forEach((name, series) -> {
+            sb.append("# TYPE ").append(name).append(" counter\n");
+            series.forEach((labels, value) -> sample(sb, name, labels, Long.toString(value.sum())));
+        });
+        gauges.forEach((name, series) -> {
+            sb.append("# TYPE ").append(name).append(" gauge\n");
+            series.forEach((labels, value) -> sample(sb, name, labels, Long.toString(value.getAsLong())));
+        });
+        histograms.forEach((name, series) -> {
+            sb.append("# TYPE ").append(name).append(" histogram\n");
+            series.forEach((labels, histogram) -> {
+                long[] cumulative = histogram.cumulativeCounts();
+                String prefix = labels.isEmpty() ? "" : labels + ",";
+                for (int i = 0; i < Histogram.BUCKETS_SECONDS.length; i++) {
+                    sample(sb, name + "_bucket", prefix + BUCKET_LABELS[i], Long.toString(cumulative[i]));
+                }
+                long count = cumulative[cumulative.length - 1];
+                sample(sb, name + "_bucket", prefix + "le=\"+Inf\"", Long.toString(count));
+                sample(sb, name + "_sum", labels, Double.toString(histogram.sumSeconds()));
+                sample(sb, name + "_count", labels, Long.toString(count));
+            });
+        });
+        return sb.toString();
+    }
+
+    // Без явного адреса слушаем только loopback: метрики не должны торчать наружу по умолчанию
+    public void serve(String bind, int port) throws IOException {
+        InetSocketAddress address = bind.isEmpty()
+                ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+                : new InetSocketAddress(bind, port);
+        if (address.isUnresolved()) {
+            throw new IOException("Cannot resolve METRICS_BIND " + bind);
+        }
+        server = HttpServer.create(address, 0);
+        server.createContext("/metrics", exchange -> {
+            try (exchange) {
+                byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "metrics-http");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.start();
+        log.info("Metrics are served on {} at /metrics", address);
+    }
+
+    InetSocketAddress address() {
+        return server == null ? null : server.getAddress();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, String value) {
+        sb.append(name);
+        if (!labels.isEmpty()) sb.append('{').append(labels).append('}');
+        sb.append(' ').append(value).append('\n');
+    }
+}
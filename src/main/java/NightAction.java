@@ -0,0 +1,3 @@
+// Ночной ход роли: кто ходил и в кого
+public record NightAction(long actorId, long targetId) {
+}
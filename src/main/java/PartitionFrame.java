@@ -0,0 +1,68 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+// Кадр протокола между ingress и воркерами: тип, два числа (id чата/пользователя) и полезная нагрузка
+public record PartitionFrame(Type type, long a, long b, byte[] payload) {
+    private static final byte[] EMPTY = new byte[0];
+    private static final int MAX_PAYLOAD = 16 * 1024 * 1024;
+
+    public enum Type {
+        HELLO,    // воркер → ingress: id воркера в payload
+        READY,    // воркер → ingress: состав игр передан, можно ставить на кольцо
+        PLAYER,   // воркер → ingress: игрок a сидит в игре b
+        GONE,     // воркер → ingress: игра a закончилась
+        UPDATE,   // ingress → воркер: Update в JSON
+        EXPORT,   // ingress → воркер: отдать игру a
+        STATE,    // воркер → ingress: снапшот игры a (пусто — игры уже нет)
+        ADOPT,    // ingress → воркер: принять игру a из снапшота
+        ADOPTED,  // воркер → ingress: игра a принята
+        LEAVING,  // воркер → ingress: уходит, заберите игры
+        LEFT,     // ingress → воркер: игр на воркере больше нет
+        KEPT,     // воркер → ingress: игру a отдать не удалось, она осталась у воркера
+        REJECTED, // воркер → ingress: снапшот игры a принять не удалось
+        RELEASE   // ingress → воркер: ответ типа b по игре a учтён, хранить его больше не нужно
+    }
+
+    public static PartitionFrame of(Type type, long a, long b) {
+        return new PartitionFrame(type, a, b, EMPTY);
+    }
+
+    public static PartitionFrame of(Type type, long a, String payload) {
+        return new PartitionFrame(type, a, 0, payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String text() {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeByte(type.ordinal());
+        out.writeLong(a);
+        out.writeLong(b);
+        out.writeInt(payload.length);
+        out.write(payload);
+    }
+
+    public static PartitionFrame read(DataInputStream in) throws IOException {
+        Type type = Type.values()[in.readUnsignedByte()];
+        long a = in.readLong();
+        long b = in.readLong();
+        int length = in.readInt();
+        if (length < 0 || length > MAX_PAYLOAD) throw new IOException("Bad frame length " + length);
+        byte[] payload = length == 0 ? EMPTY : new byte[length];
+        in.readFully(payload);
+        return new PartitionFrame(type, a, b, payload);
+    }
+
+    // "/run/mafia/ingress.sock" — unix-сокет, "127.0.0.1:7070" — TCP
+    public static SocketAddress address(String spec) {
+        if (spec.contains("/")) return UnixDomainSocketAddress.of(spec);
+        int colon = spec.lastIndexOf(':');
+        return new InetSocketAddress(spec.substring(0, colon), Integer.parseInt(spec.substring(colon + 1)));
+    }
+}
@@ -0,0 +1,177 @@
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.*;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Воркер за ingress: получает апдейты своих игр, сообщает ingress, кто в какой игре, и отдаёт/принимает игры при ребалансировке.
+// Сам держит соединение и переподключается, если ingress перезапустился
+public class PartitionWorker implements GameEventSink {
+    private static final Logger log = LoggerFactory.getLogger(Main.class);
+    private static final long RECONNECT_MILLIS = 1000;
+
+    private final MafiaBot bot;
+    private final SocketAddress ingress;
+    private final String workerId;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final BlockingQueue<PartitionFrame> outgoing = new LinkedBlockingQueue<>();
+    // gameChatId → ответ по переезду игры, пока ingress его не подтвердил. Отданный снапшот — единственная копия
+    // игры, поэтому он живёт здесь, пока игру не примет другой воркер, и пересылается после переподключения
+    private final Map<Long, PartitionFrame> handovers = new ConcurrentHashMap<>();
+    private final CountDownLatch left = new CountDownLatch(1);
+    private volatile SocketChannel channel;
+    private volatile boolean running = true;
+
+    public PartitionWorker(MafiaBot bot, String ingressAddress, String workerId) {
+        this.bot = bot;
+        this.ingress = PartitionFrame.address(ingressAddress);
+        this.workerId = workerId;
+    }
+
+    public void start() {
+        Thread reader = new Thread(this::connectLoop, "partition-reader");
+        reader.setDaemon(true);
+        reader.start();
+        Thread writer = new Thread(this::writeLoop, "partition-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Просит ingress раздать игры другим воркерам и ждёт, пока их здесь не останется.
+    // Если забрать некому, игры остаются и уходят в handoff при остановке
+    public void leave(long timeoutMillis) {
+        if (channel == null) return;
+        outgoing.add(PartitionFrame.of(PartitionFrame.Type.LEAVING, 0, 0));
+        try {
+            if (!left.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                log.warn("Ingress did not take over the games in {} ms", timeoutMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        running = false;
+        closeChannel();
+    }
+
+    // Из журнала событий ingress нужно только, кто в какой игре сидит. Без связи события не копятся:
+    // при подключении состав пересылается целиком, а игры, которых в нём нет, ingress забывает сам
+    @Override
+    public long record(long gameChatId, GameEvent event) {
+        if (channel == null) return 0;
+        switch (event) {
+            case GameEvent.Joined e -> outgoing.add(PartitionFrame.of(PartitionFrame.Type.PLAYER, e.userId(), gameChatId));
+            case GameEvent.Removed e -> outgoing.add(PartitionFrame.of(PartitionFrame.Type.GONE, gameChatId, 0));
+            default -> {
+            }
+        }
+        return 0;
+    }
+
+    private void connectLoop() {
+        while (running) {
+            try (SocketChannel ch = SocketChannel.open(ingress)) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch)));
+                outgoing.clear();
+                outgoing.add(PartitionFrame.of(PartitionFrame.Type.HELLO, 0, workerId));
+                channel = ch;
+                // Ingress мог перезапуститься и ничего не знать о наших играх — пересылаем состав целиком
+                for (GameCore game : bot.getGames().getGames()) {
+                    for (long userId : game.getPlayerIds()) {
+                        outgoing.add(PartitionFrame.of(PartitionFrame.Type.PLAYER, userId, game.getGameChatId()));
+                    }
+                }
+                handovers.values().forEach(outgoing::add);
+                outgoing.add(PartitionFrame.of(PartitionFrame.Type.READY, 0, 0));
+                log.info("Worker {} connected to ingress {}", workerId, ingress);
+                while (running) {
+                    handle(PartitionFrame.read(in));
+                }
+            } catch (IOException e) {
+                if (!running) return;
+                log.warn("Ingress {} is unavailable: {}", ingress, e.getMessage());
+            } finally {
+                channel = null;
+            }
+            try {
+                Thread.sleep(RECONNECT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void handle(PartitionFrame frame) throws IOException {
+        long chatId = frame.a();
+        switch (frame.type()) {
+            case UPDATE -> bot.onUpdateReceived(mapper.readValue(frame.payload(), Update.class));
+            case EXPORT -> bot.exportGame(chatId).whenComplete((exported, error) -> {
+                if (error != null) {
+                    log.error("Cannot export game {}", chatId, error);
+                    reply(PartitionFrame.of(PartitionFrame.Type.KEPT, chatId, 0));
+                } else if (exported.isEmpty()) {
+                    // Игры уже нет — терять нечего, подтверждение не нужно
+                    outgoing.add(PartitionFrame.of(PartitionFrame.Type.STATE, chatId, ""));
+                } else {
+                    reply(PartitionFrame.of(PartitionFrame.Type.STATE, chatId, exported));
+                }
+            });
+            case ADOPT -> bot.importGame(chatId, frame.text()).whenComplete((ignored, error) -> {
+                if (error != null) log.error("Cannot adopt game {}", chatId, error);
+                reply(PartitionFrame.of(error != null ? PartitionFrame.Type.REJECTED : PartitionFrame.Type.ADOPTED, chatId, 0));
+            });
+            case RELEASE -> handovers.computeIfPresent(chatId, (id, kept) -> kept.type().ordinal() == frame.b() ? null : kept);
+            case LEFT -> left.countDown();
+            default -> log.warn("Unexpected frame {} from ingress", frame.type());
+        }
+    }
+
+    // Без связи ответ только запоминается: его перешлёт connectLoop после HELLO
+    private void reply(PartitionFrame frame) {
+        handovers.put(frame.a(), frame);
+        if (channel != null) outgoing.add(frame);
+    }
+
+    private void writeLoop() {
+        while (running || !outgoing.isEmpty()) {
+            try {
+                PartitionFrame first = outgoing.poll(100, TimeUnit.MILLISECONDS);
+                SocketChannel ch = channel;
+                if (first == null || ch == null) continue;
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch)));
+                first.write(out);
+                PartitionFrame next;
+                while ((next = outgoing.poll()) != null) {
+                    next.write(out);
+                }
+                out.flush();
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                // Переподключение и пересылка состава и неподтверждённых ответов — на потоке чтения
+                log.debug("Cannot write to ingress: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void closeChannel() {
+        SocketChannel ch = channel;
+        if (ch == null) return;
+        try {
+            ch.close();
+        } catch (IOException e) {
+            log.debug("Cannot close ingress channel: {}", e.getMessage());
+        }
+    }
+}
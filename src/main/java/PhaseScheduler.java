@@ -0,0 +1,119 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PhaseScheduler {
+    private static final Logger log = LoggerFactory.getLogger(Main.class);
+    private static final long DRIFT_WARN_MILLIS = 250;
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<Long, PhaseTask> timers = new ConcurrentHashMap<>(); // gameChatId → pending phase deadline
+    private final Histogram lateness;
+    private volatile boolean frozen;
+
+    public PhaseScheduler(int threads, Histogram lateness) {
+        this.lateness = lateness;
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(threads, r -> {
+            Thread t = new Thread(r, "phase-timer-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        executor.setRemoveOnCancelPolicy(true); // отменённые фазы сразу уходят из очереди
+    }
+
+    // Новый дедлайн для игры заменяет предыдущий
+    public void schedule(long gameId, long delayMillis, Runnable callback) {
+        if (frozen) return;
+        PhaseTask task = new PhaseTask(gameId, delayMillis, callback);
+        PhaseTask previous = timers.put(gameId, task);
+        if (previous != null) {
+            previous.cancel();
+        }
+        task.future = executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        if (task.cancelled) {
+            task.future.cancel(false);
+        }
+    }
+
+    // Периодическая служебная задача на тех же потоках (уборка лобби); останавливается вместе с таймерами
+    public void repeat(long periodMillis, Runnable task) {
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Periodic task failed", e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean cancel(long gameId) {
+        PhaseTask task = timers.remove(gameId);
+        if (task == null) return false;
+        task.cancel();
+        return true;
+    }
+
+    public int getActiveTimers() {
+        return timers.size();
+    }
+
+    // Перед остановкой: фазы больше не переключаются, дедлайны остаются в играх и уходят в handoff
+    public void freeze() {
+        frozen = true;
+        shutdown();
+    }
+
+    public void shutdown() {
+        timers.values().forEach(PhaseTask::cancel);
+        timers.clear();
+        executor.shutdownNow();
+    }
+
+    private void recordDrift(long driftNanos) {
+        lateness.observeNanos(Math.max(0, driftNanos));
+        long driftMillis = TimeUnit.NANOSECONDS.toMillis(driftNanos);
+        if (driftMillis > DRIFT_WARN_MILLIS) {
+            log.warn("Phase timer fired {} ms late", driftMillis);
+        }
+    }
+
+    private class PhaseTask implements Runnable {
+        private final long gameId;
+        private final long deadlineNanos;
+        private final Runnable callback;
+        private volatile ScheduledFuture<?> future;
+        private volatile boolean cancelled;
+
+        PhaseTask(long gameId, long delayMillis, Runnable callback) {
+            this.gameId = gameId;
+            this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            this.callback = callback;
+        }
+
+        void cancel() {
+            cancelled = true;
+            ScheduledFuture<?> f = future;
+            if (f != null) {
+                f.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (cancelled || !timers.remove(gameId, this)) return;
+            recordDrift(System.nanoTime() - deadlineNanos);
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                log.error("Phase callback failed for game {}", gameId, e);
+            }
+        }
+    }
+}
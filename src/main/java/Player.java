@@ -3,6 +3,7 @@ public abstract class Player {
     protected final String username;
     protected Role role;
     protected boolean isAlive = true;
+    private PlayerIndex index;
 
     public Player(long userId, String username) {
         this.userId = userId;
@@ -13,9 +14,15 @@ public abstract class Player {
     public abstract String getRoleDescription();
 
     public boolean isAlive() { return isAlive; }
-    public void setAlive(boolean alive) { isAlive = alive; }
+    public void setAlive(boolean alive) {
+        if (isAlive == alive) return;
+        isAlive = alive;
+        if (index != null) index.aliveChanged(this);
+    }
     public Role getRole() { return role; }
     public void setRole(Role role) { this.role = role; }
     public String getUsername() { return username; }
     public long getUserId() { return userId; }
+
+    void attach(PlayerIndex index) { this.index = index; }
 }
\ No newline at end of file
@@ -0,0 +1,91 @@
+import java.util.*;
+
+// Игроки лобби с индексами по id и нику и счётчиками живых по ролям
+public class PlayerIndex {
+    private final List<Player> players = new ArrayList<>();
+    private final LongMap<Player> byId = new LongMap<>();
+    private final Map<String, Player> byName = new HashMap<>(); // ник в нижнем регистре → игрок
+    private final int[] aliveByRole = new int[Role.values().length];
+    private int aliveTotal;
+    private long version; // растёт при любом изменении состава или живых
+
+    public boolean add(Player player) {
+        if (byId.containsKey(player.getUserId())) return false;
+        players.add(player);
+        index(player);
+        return true;
+    }
+
+    // После раздачи ролей игроки пересоздаются — индекс строится заново
+    public void replaceAll(List<Player> newPlayers) {
+        clear();
+        for (Player p : newPlayers) {
+            players.add(p);
+            index(p);
+        }
+    }
+
+    public Player get(long userId) {
+        return byId.get(userId);
+    }
+
+    public Player findByName(String name) {
+        return byName.get(normalize(name));
+    }
+
+    public int aliveCount() {
+        return aliveTotal;
+    }
+
+    public int aliveCount(Role role) {
+        return aliveByRole[role.ordinal()];
+    }
+
+    public int size() {
+        return players.size();
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<Player> asList() {
+        return Collections.unmodifiableList(players);
+    }
+
+    public void clear() {
+        for (Player p : players) {
+            p.attach(null);
+        }
+        players.clear();
+        byId.clear();
+        byName.clear();
+        Arrays.fill(aliveByRole, 0);
+        aliveTotal = 0;
+        version++;
+    }
+
+    void aliveChanged(Player player) {
+        int delta = player.isAlive() ? 1 : -1;
+        aliveByRole[player.getRole().ordinal()] += delta;
+        aliveTotal += delta;
+        version++;
+    }
+
+    private void index(Player player) {
+        version++;
+        byId.put(player.getUserId(), player);
+        if (player.getUsername() != null) {
+            byName.put(normalize(player.getUsername()), player);
+        }
+        if (player.isAlive()) {
+            aliveChanged(player);
+        }
+        player.attach(this);
+    }
+
+    // trim/toLowerCase возвращают ту же строку, если менять нечего, так что обычный ник не аллоцирует
+    static String normalize(String name) {
+        return name.trim().toLowerCase();
+    }
+}
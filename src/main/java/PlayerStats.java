@@ -0,0 +1,78 @@
+// Накопленная статистика игрока по всем сыгранным партиям
+public class PlayerStats {
+    private final long userId;
+    private String username;
+    private int games;
+    private int wins;
+    private int survived;
+    private final int[] gamesByRole = new int[Role.values().length];
+    private final int[] winsByRole = new int[Role.values().length];
+
+    public PlayerStats(long userId, String username) {
+        this.userId = userId;
+        this.username = username;
+    }
+
+    void add(String username, Role role, boolean won, boolean survived) {
+        if (username != null) this.username = username;
+        games++;
+        gamesByRole[role.ordinal()]++;
+        if (won) {
+            wins++;
+            winsByRole[role.ordinal()]++;
+        }
+        if (survived) this.survived++;
+    }
+
+    PlayerStats copy() {
+        PlayerStats copy = new PlayerStats(userId, username);
+        copy.games = games;
+        copy.wins = wins;
+        copy.survived = survived;
+        System.arraycopy(gamesByRole, 0, copy.gamesByRole, 0, gamesByRole.length);
+        System.arraycopy(winsByRole, 0, copy.winsByRole, 0, winsByRole.length);
+        return copy;
+    }
+
+    public long getUserId() { return userId; }
+    public String getUsername() { return username; }
+    public int getGames() { return games; }
+    public int getWins() { return wins; }
+    public int getSurvived() { return survived; }
+    public int getGames(Role role) { return gamesByRole[role.ordinal()]; }
+    public int getWins(Role role) { return winsByRole[role.ordinal()]; }
+
+    public int getWinRatePercent() {
+        return games == 0 ? 0 : wins * 100 / games;
+    }
+
+    public int getSurvivalPercent() {
+        return games == 0 ? 0 : survived * 100 / games;
+    }
+
+    String encode() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(userId).append('\t').append(username == null ? "" : username).append('\t')
+                .append(games).append('\t').append(wins).append('\t').append(survived);
+        for (Role role : Role.values()) {
+            sb.append('\t').append(gamesByRole[role.ordinal()]).append(',').append(winsByRole[role.ordinal()]);
+        }
+        return sb.toString();
+    }
+
+    static PlayerStats decode(String line) {
+        String[] f = line.split("\t", -1);
+        PlayerStats stats = new PlayerStats(Long.parseLong(f[0]), f[1].isEmpty() ? null : f[1]);
+        stats.games = Integer.parseInt(f[2]);
+        stats.wins = Integer.parseInt(f[3]);
+        stats.survived = Integer.parseInt(f[4]);
+        for (Role role : Role.values()) {
+            int column = 5 + role.ordinal();
+            if (column >= f.length) break;
+            String[] pair = f[column].split(",");
+            stats.gamesByRole[role.ordinal()] = Integer.parseInt(pair[0]);
+            stats.winsByRole[role.ordinal()] = Integer.parseInt(pair[1]);
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,33 @@
+// Сколько игроков получает каждую активную роль; остальные — мирные
+public record RoleQuota(int mafia, int doctors, int commissars) {
+    public static final RoleQuota CLASSIC = new RoleQuota(1, 1, 1);
+
+    public RoleQuota {
+        if (mafia < 1 || doctors < 0 || commissars < 0) {
+            throw new IllegalArgumentException("Нужна хотя бы одна мафия, остальные роли — от нуля");
+        }
+    }
+
+    // По умолчанию примерно каждый четвёртый — мафия, доктор на каждые 20 игроков, комиссар на каждые 25
+    public static RoleQuota forLobby(int players) {
+        return new RoleQuota(Math.max(1, players / 4), 1 + players / 20, 1 + players / 25);
+    }
+
+    public int activeRoles() {
+        return mafia + doctors + commissars;
+    }
+
+    public void validate(int players) {
+        if (activeRoles() > players) {
+            throw new IllegalStateException("Ролей больше, чем игроков!");
+        }
+        if (mafia * 2 >= players) {
+            throw new IllegalStateException("Слишком много мафии для " + players + " игроков!");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "мафия " + mafia + ", доктора " + doctors + ", комиссары " + commissars;
+    }
+}
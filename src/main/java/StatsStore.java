@@ -0,0 +1,194 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Статистика игроков без внешней БД: stats.tsv — полная таблица, stats.log — итоги партий после неё.
+// Оба файла начинаются с номера поколения: лог применяется только к таблице своего поколения, так что
+// лог, который пережил падение между заменой таблицы и его удалением, второй раз не считается.
+// В памяти — индекс по userId и топ по победам, который обновляется только для игроков завершившейся партии
+public class StatsStore {
+    private static final Logger log = LoggerFactory.getLogger(Main.class);
+    private static final String TABLE_FILE = "stats.tsv";
+    private static final String LOG_FILE = "stats.log";
+    private static final int COMPACT_AFTER_LINES = 10_000;
+    private static final String GENERATION = "#generation ";
+
+    // Итог одного игрока в одной партии
+    public record Result(long userId, String username, Role role, boolean won, boolean survived) {}
+
+    private final Path dir;
+    private final int topSize;
+    private final LongMap<PlayerStats> players = new LongMap<>();
+    // Победы только растут, поэтому ограниченный топ остаётся точным без пересчёта по всем игрокам
+    private final TreeSet<PlayerStats> top = new TreeSet<>(
+            Comparator.comparingInt((PlayerStats p) -> p.getWins()).reversed().thenComparingLong(PlayerStats::getUserId));
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "stats-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    private String topText;
+    private int logLines;
+    private long generation; // таблицы на диске; файлы без заголовка — поколение 0
+
+    public StatsStore(Path dir, int topSize) {
+        this.dir = dir;
+        this.topSize = topSize;
+    }
+
+    public synchronized void load() throws IOException {
+        Files.createDirectories(dir);
+        Path table = dir.resolve(TABLE_FILE);
+        if (Files.exists(table)) {
+            List<String> lines = Files.readAllLines(table, StandardCharsets.UTF_8);
+            generation = generationOf(lines);
+            for (String line : lines) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                PlayerStats stats = PlayerStats.decode(line);
+                players.put(stats.getUserId(), stats);
+            }
+        }
+        Path results = dir.resolve(LOG_FILE);
+        List<String> logged = Files.exists(results) ? Files.readAllLines(results, StandardCharsets.UTF_8) : List.of();
+        if (!logged.isEmpty() && generationOf(logged) != generation) {
+            // Таблица уже сжата из этого лога, а удалить его не успели
+            log.warn("Skipping {} of generation {}: table is at generation {}", LOG_FILE, generationOf(logged), generation);
+            Files.delete(results);
+        } else {
+            for (String line : logged) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] f = line.split("\t", -1);
+                apply(new Result(Long.parseLong(f[0]), f[1].isEmpty() ? null : f[1], Role.valueOf(f[2]),
+                        f[3].equals("1"), f[4].equals("1")));
+                logLines++;
+            }
+        }
+        players.forEach((userId, stats) -> offerTop(stats));
+        log.info("Loaded stats of {} players", players.size());
+    }
+
+    // Итоги партии применяются сразу, на диск уходят одной записью в фоне
+    public void record(List<Result> results) {
+        StringBuilder batch = new StringBuilder();
+        List<String> table = null;
+        long batchGeneration;
+        synchronized (this) {
+            for (Result result : results) {
+                offerTop(apply(result));
+                batch.append(result.userId()).append('\t').append(result.username() == null ? "" : result.username())
+                        .append('\t').append(result.role()).append('\t').append(result.won() ? 1 : 0)
+                        .append('\t').append(result.survived() ? 1 : 0).append('\n');
+            }
+            logLines += results.size();
+            if (logLines >= COMPACT_AFTER_LINES) {
+                // Таблица снимается вместе с этой партией: всё, что раньше было в логе, уже в ней
+                logLines = 0;
+                generation++;
+                table = new ArrayList<>(players.size() + 1);
+                table.add(GENERATION + generation);
+                List<String> lines = table;
+                players.forEach((userId, stats) -> lines.add(stats.encode()));
+            }
+            batchGeneration = generation;
+        }
+        List<String> compacted = table;
+        writer.execute(() -> {
+            try {
+                if (compacted != null) compact(compacted);
+                else append(batch.toString(), batchGeneration);
+            } catch (IOException e) {
+                log.error("Cannot write player stats", e);
+            }
+        });
+    }
+
+    // Копия под монитором: итоги партий обновляют живые записи, и чтение снаружи могло бы увидеть половину обновления
+    public synchronized PlayerStats get(long userId) {
+        PlayerStats stats = players.get(userId);
+        return stats == null ? null : stats.copy();
+    }
+
+    public synchronized String getTopText() {
+        if (topText == null) {
+            StringBuilder sb = new StringBuilder("🏆 Лучшие игроки:\n");
+            int place = 1;
+            for (PlayerStats stats : top) {
+                sb.append(place++).append(". ").append(stats.getUsername() != null ? stats.getUsername() : "#" + stats.getUserId()).append(" — побед: ").append(stats.getWins())
+                        .append(" из ").append(stats.getGames()).append(" (").append(stats.getWinRatePercent()).append("%)\n");
+            }
+            if (top.isEmpty()) sb.append("Пока никто не доиграл ни одной партии");
+            topText = sb.toString();
+        }
+        return topText;
+    }
+
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private PlayerStats apply(Result result) {
+        PlayerStats stats = players.get(result.userId());
+        if (stats == null) {
+            stats = new PlayerStats(result.userId(), result.username());
+            players.put(result.userId(), stats);
+        }
+        // Ключ сортировки меняется — убираем из топа до обновления
+        boolean inTop = top.remove(stats);
+        stats.add(result.username(), result.role(), result.won(), result.survived());
+        if (inTop) offerTop(stats);
+        return stats;
+    }
+
+    private void offerTop(PlayerStats stats) {
+        if (stats.getWins() == 0 || top.contains(stats)) return;
+        if (top.size() >= topSize && top.comparator().compare(stats, top.last()) > 0) return;
+        top.add(stats);
+        if (top.size() > topSize) top.pollLast();
+        topText = null;
+    }
+
+    private static long generationOf(List<String> lines) {
+        if (lines.isEmpty() || !lines.get(0).startsWith(GENERATION)) return 0;
+        return Long.parseLong(lines.get(0).substring(GENERATION.length()));
+    }
+
+    // Новый лог начинается с поколения таблицы, за которой он идёт
+    private void append(String batch, long batchGeneration) throws IOException {
+        File file = dir.resolve(LOG_FILE).toFile();
+        boolean created = !file.exists() || file.length() == 0;
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            if (created) batch = GENERATION + batchGeneration + "\n" + batch;
+            out.write(batch.getBytes(StandardCharsets.UTF_8));
+            out.getChannel().force(false);
+        }
+    }
+
+    // Переписывает таблицу целиком и обнуляет лог итогов; вызывается только из потока записи
+    private void compact(List<String> lines) throws IOException {
+        Path tmp = dir.resolve(TABLE_FILE + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             Writer w = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8))) {
+            for (String line : lines) {
+                w.write(line);
+                w.write('\n');
+            }
+            w.flush();
+            fos.getChannel().force(true);
+        }
+        Files.move(tmp, dir.resolve(TABLE_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(dir.resolve(LOG_FILE));
+        log.debug("Player stats compacted: {} players", lines.size());
+    }
+}
@@ -0,0 +1,42 @@
+import java.util.concurrent.TimeUnit;
+
+// GCRA-вариант token bucket: хранит только теоретическое время следующей отправки
+public class TokenBucket {
+    private final long intervalNanos;
+    private final long burstToleranceNanos;
+    private long theoreticalArrival;
+
+    public TokenBucket(int permits, long period, TimeUnit unit, int burst) {
+        this.intervalNanos = unit.toNanos(period) / permits;
+        this.burstToleranceNanos = intervalNanos * (burst - 1);
+        this.theoreticalArrival = System.nanoTime();
+    }
+
+    // Резервирует слот не раньше atNanos и возвращает момент, когда можно отправлять
+    public synchronized long reserve(long atNanos) {
+        long tat = Math.max(theoreticalArrival, atNanos);
+        long allowedAt = Math.max(atNanos, tat - burstToleranceNanos);
+        theoreticalArrival = tat + intervalNanos;
+        return allowedAt;
+    }
+
+    // Берёт слот только если он доступен прямо сейчас, без ожидания
+    public synchronized boolean tryAcquire(long nowNanos) {
+        if (theoreticalArrival - burstToleranceNanos > nowNanos) return false;
+        theoreticalArrival = Math.max(theoreticalArrival, nowNanos) + intervalNanos;
+        return true;
+    }
+
+    // 429 с retry_after: до untilNanos этому получателю ничего не отправляем
+    public synchronized void pushBack(long untilNanos) {
+        theoreticalArrival = Math.max(theoreticalArrival, untilNanos + burstToleranceNanos);
+    }
+
+    public synchronized long nanosUntilAvailable(long nowNanos) {
+        return Math.max(0, theoreticalArrival - burstToleranceNanos - nowNanos);
+    }
+
+    public synchronized boolean isIdle(long nowNanos) {
+        return theoreticalArrival <= nowNanos;
+    }
+}
@@ -0,0 +1,110 @@
+import java.util.*;
+import java.util.function.BiConsumer;
+
+// Дневное голосование: смена голоса, лидер и ничья поддерживаются за O(1) на каждый голос
+public class VoteTally {
+    private final LongMap<Candidate> voterChoice = new LongMap<>(); // voterId → за кого голосует
+    private final LongMap<Candidate> candidates = new LongMap<>(); // targetId → счётчик
+    private final List<Set<Candidate>> byCount = new ArrayList<>(); // число голосов → кандидаты с этим числом
+    private final Map<String, Integer> counts = new LinkedHashMap<>(); // ник → голоса, для показа
+    private final Map<String, Integer> countsView = Collections.unmodifiableMap(counts);
+    private int maxVotes;
+
+    public void vote(long voterId, Player target) {
+        Candidate previous = voterChoice.get(voterId);
+        if (previous != null && previous.player == target) return;
+        if (previous != null) {
+            decrement(previous);
+        }
+        Candidate next = candidates.get(target.getUserId());
+        if (next == null) {
+            next = new Candidate(target);
+            candidates.put(target.getUserId(), next);
+        }
+        increment(next);
+        voterChoice.put(voterId, next);
+    }
+
+    public int votesFor(Player target) {
+        Candidate c = candidates.get(target.getUserId());
+        return c == null ? 0 : c.votes;
+    }
+
+    public int getMaxVotes() {
+        return maxVotes;
+    }
+
+    public int getVoterCount() {
+        return voterChoice.size();
+    }
+
+    // Единственный лидер или null, если голосов нет либо ничья
+    public Player getLeader() {
+        if (maxVotes == 0) return null;
+        Set<Candidate> top = byCount.get(maxVotes);
+        return top.size() == 1 ? top.iterator().next().player : null;
+    }
+
+    public boolean isTie() {
+        return maxVotes > 0 && byCount.get(maxVotes).size() > 1;
+    }
+
+    public void forEachVote(BiConsumer<Long, Player> action) {
+        voterChoice.forEach((voterId, candidate) -> action.accept(voterId, candidate.player));
+    }
+
+    // Живое представление только для чтения: ник → голоса
+    public Map<String, Integer> getCounts() {
+        return countsView;
+    }
+
+    public boolean isEmpty() {
+        return maxVotes == 0;
+    }
+
+    public void clear() {
+        voterChoice.clear();
+        candidates.clear();
+        byCount.forEach(Set::clear);
+        counts.clear();
+        maxVotes = 0;
+    }
+
+    private void increment(Candidate c) {
+        if (c.votes > 0) bucket(c.votes).remove(c);
+        c.votes++;
+        bucket(c.votes).add(c);
+        counts.put(c.player.getUsername(), c.votes);
+        if (c.votes > maxVotes) maxVotes = c.votes;
+    }
+
+    private void decrement(Candidate c) {
+        Set<Candidate> current = bucket(c.votes);
+        current.remove(c);
+        if (c.votes == maxVotes && current.isEmpty()) maxVotes--;
+        c.votes--;
+        if (c.votes > 0) {
+            bucket(c.votes).add(c);
+            counts.put(c.player.getUsername(), c.votes);
+        } else {
+            candidates.remove(c.player.getUserId());
+            counts.remove(c.player.getUsername());
+        }
+    }
+
+    private Set<Candidate> bucket(int votes) {
+        while (byCount.size() <= votes) {
+            byCount.add(new LinkedHashSet<>());
+        }
+        return byCount.get(votes);
+    }
+
+    private static final class Candidate {
+        private final Player player;
+        private int votes;
+
+        Candidate(Player player) {
+            this.player = player;
+        }
+    }
+}
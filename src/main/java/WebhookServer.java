@@ -0,0 +1,80 @@
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.security.MessageDigest;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+// Приём обновлений через webhook: Telegram (или curl с записанным Update) шлёт POST с JSON
+public class WebhookServer {
+    private static final Logger log = LoggerFactory.getLogger(Main.class);
+    private static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    private final MafiaBot bot;
+    private final String secretToken;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private HttpServer server;
+
+    public WebhookServer(MafiaBot bot, String secretToken) {
+        this.bot = bot;
+        this.secretToken = secretToken;
+    }
+
+    public void start(InetSocketAddress address, String path) throws IOException {
+        server = HttpServer.create(address, 0);
+        server.createContext(path, this::handle);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+        log.info("Webhook is listening on {} at {}", address, path);
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(1);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (!isAuthorized(exchange.getRequestHeaders().getFirst(SECRET_HEADER))) {
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+            if (!bot.isAccepting()) {
+                // Telegram повторит доставку — апдейт получит уже новый процесс
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            Update update;
+            try (InputStream body = exchange.getRequestBody()) {
+                update = mapper.readValue(body, Update.class);
+            } catch (IOException e) {
+                log.warn("Malformed webhook update: {}", e.getMessage());
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            bot.onUpdateReceived(update);
+            exchange.sendResponseHeaders(200, -1);
+        }
+    }
+
+    // Без секрета сервер слушает только loopback (см. Main.startWebhook), публичный адрес без секрета не стартует
+    private boolean isAuthorized(String header) {
+        if (secretToken == null || secretToken.isEmpty()) return true;
+        return header != null && MessageDigest.isEqual(
+                secretToken.getBytes(StandardCharsets.UTF_8), header.getBytes(StandardCharsets.UTF_8));
+    }
+}
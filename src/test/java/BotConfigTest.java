@@ -0,0 +1,74 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BotConfigTest {
+    @TempDir
+    Path dir;
+
+    private BotConfig load(String... lines) throws Exception {
+        Path file = dir.resolve("mafia.properties");
+        Files.write(file, List.of(lines));
+        return BotConfig.load(file);
+    }
+
+    @Test
+    void defaultsWithoutFile() throws Exception {
+        BotConfig config = BotConfig.load(dir.resolve("missing.properties"));
+        assertEquals(Duration.ofSeconds(40), config.defaults().night());
+        assertEquals(4, config.defaults().minPlayers());
+        assertEquals(3, config.inboundPerSecond());
+        assertEquals(5, config.inboundBurst());
+        assertEquals(Duration.ofMinutes(30), config.lobbyTtl());
+        assertTrue(config.chats().isEmpty());
+        assertEquals("", config.startup().metricsBind()); // loopback
+    }
+
+    // Переопределение чата наследует от общих правил всё, что в нём не задано
+    @Test
+    void chatOverridesFallBackToDefaults() throws Exception {
+        BotConfig config = load(
+                "NIGHT_SECONDS=60",
+                "INBOUND_PER_SECOND=7",
+                "chat.-100.DAY_SECONDS=90",
+                "chat.-100.MIN_PLAYERS=5",
+                "chat.42.NIGHT_SECONDS=10");
+
+        assertEquals(7, config.inboundPerSecond());
+        BotConfig.ChatRules group = config.rules(-100);
+        assertEquals(Duration.ofSeconds(60), group.night());
+        assertEquals(Duration.ofSeconds(90), group.day());
+        assertEquals(5, group.minPlayers());
+        assertEquals(Duration.ofSeconds(90), group.phase(GameCore.GameState.DAY));
+
+        assertEquals(Duration.ofSeconds(10), config.rules(42).night());
+        assertEquals(Duration.ofSeconds(40), config.rules(42).day());
+        assertSame(config.defaults(), config.rules(-200));
+    }
+
+    @Test
+    void invalidValuesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> load("NIGHT_SECONDS=soon"));
+        assertThrows(IllegalArgumentException.class, () -> load("MIN_PLAYERS=2"));
+        assertThrows(IllegalArgumentException.class, () -> load("DAY_SECONDS=0"));
+        assertThrows(IllegalArgumentException.class, () -> load("INBOUND_BURST=0"));
+        assertThrows(IllegalArgumentException.class, () -> load("chat.group.NIGHT_SECONDS=10"));
+        assertThrows(IllegalArgumentException.class, () -> load("chat.-100=10"));
+        assertThrows(IllegalArgumentException.class, () -> load("chat.-100.MIN_PLAYERS=1"));
+    }
+
+    @Test
+    void publicWebhookNeedsSecret() throws Exception {
+        assertThrows(IllegalArgumentException.class,
+                () -> load("BOT_MODE=webhook", "WEBHOOK_URL=https://example.org/hook"));
+        BotConfig config = load("BOT_MODE=webhook", "WEBHOOK_URL=https://example.org/hook", "WEBHOOK_SECRET=s3cret");
+        assertEquals("s3cret", config.startup().webhookSecret());
+        load("BOT_MODE=webhook"); // без URL только слушает на loopback
+    }
+}
@@ -0,0 +1,60 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+    private static final long COOLDOWN = TimeUnit.SECONDS.toNanos(10);
+
+    private final CircuitBreaker breaker = new CircuitBreaker(3, 10, TimeUnit.SECONDS);
+
+    private void open(long now) {
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure(now);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void opensAfterThresholdFailuresInARow() {
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        breaker.onSuccess(); // успех сбрасывает счёт
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire(0));
+        assertEquals(0, breaker.nanosUntilRetry(0));
+
+        breaker.onFailure(0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(1));
+        assertEquals(COOLDOWN - 1, breaker.nanosUntilRetry(1));
+    }
+
+    @Test
+    void halfOpenLetsOneProbeThrough() {
+        open(0);
+        assertEquals(0, breaker.nanosUntilRetry(COOLDOWN));
+        assertTrue(breaker.tryAcquire(COOLDOWN));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(COOLDOWN + 1));
+        assertTrue(breaker.nanosUntilRetry(COOLDOWN + 1) > 0);
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire(COOLDOWN + 2));
+    }
+
+    @Test
+    void failedProbeReopens() {
+        open(0);
+        assertTrue(breaker.tryAcquire(COOLDOWN));
+        breaker.onFailure(COOLDOWN + 5);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(COOLDOWN + 6));
+        assertEquals(COOLDOWN - 1, breaker.nanosUntilRetry(COOLDOWN + 6));
+        assertTrue(breaker.tryAcquire(2 * COOLDOWN + 5));
+    }
+}
@@ -0,0 +1,52 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandParserTest {
+    private final CommandParser parser = new CommandParser("MafiaGameBot");
+
+    @Test
+    void parsesCommandAndTrimmedArgument() {
+        Command command = parser.parse("/vote   alice  ");
+        assertEquals(Command.Type.VOTE, command.type());
+        assertTrue(command.hasArgument());
+        assertEquals("alice", command.argument());
+    }
+
+    @Test
+    void ignoresCaseOfCommandName() {
+        assertEquals(Command.Type.KILL, parser.parse("/KiLL bob").type());
+    }
+
+    @Test
+    void commandWithoutArgument() {
+        Command command = parser.parse("/join");
+        assertEquals(Command.Type.JOIN, command.type());
+        assertFalse(command.hasArgument());
+    }
+
+    @Test
+    void acceptsOwnMentionAndRejectsForeign() {
+        assertEquals(Command.Type.START, parser.parse("/start@mafiagamebot").type());
+        assertEquals("1 1 1", parser.parse("/roles@MafiaGameBot 1 1 1").argument());
+        assertEquals(Command.Type.FOREIGN, parser.parse("/start@OtherBot").type());
+        assertEquals(Command.Type.FOREIGN, parser.parse("/start@MafiaGameBot2").type());
+    }
+
+    // Префикс известной команды и её продолжение — не та же команда
+    @Test
+    void unknownCommands() {
+        assertEquals(Command.Type.UNKNOWN, parser.parse("/vot alice").type());
+        assertEquals(Command.Type.UNKNOWN, parser.parse("/voter").type());
+        assertEquals(Command.Type.UNKNOWN, parser.parse("/голос").type());
+        assertEquals(Command.Type.UNKNOWN, parser.parse("/").type());
+    }
+
+    @Test
+    void plainText() {
+        Command command = parser.parse("ну и кто же мафия?");
+        assertEquals(Command.Type.TEXT, command.type());
+        assertEquals("ну и кто же мафия?", command.argument());
+        assertEquals(Command.Type.TEXT, parser.parse("").type());
+    }
+}
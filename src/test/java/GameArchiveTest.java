@@ -0,0 +1,103 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameArchiveTest {
+    @TempDir
+    Path dir;
+
+    private record Entry(long timeMillis, long gameChatId, GameEvent event) {}
+
+    // Все типы событий; id на краях диапазона и отрицательные — проверка zigzag-varint
+    private static final List<GameEvent> EVENTS = List.of(
+            new GameEvent.Joined(Long.MAX_VALUE, "Игрок ✓"),
+            new GameEvent.Joined(-5, null),
+            new GameEvent.QuotaSet(new RoleQuota(3, 2, 1)),
+            new GameEvent.RolesAssigned(new long[]{Long.MAX_VALUE, -5, 0, 1L << 40}, new RoleQuota(1, 1, 1), Long.MIN_VALUE),
+            new GameEvent.NightActed(Long.MIN_VALUE, 127),
+            new GameEvent.Voted(128, -1),
+            new GameEvent.Revealed(300),
+            new GameEvent.LastWords(1L << 62),
+            new GameEvent.NightResolved(),
+            new GameEvent.DayResolved(),
+            new GameEvent.PhaseStarted(GameCore.GameState.DAY, 1_700_000_000_000L),
+            new GameEvent.Died(42),
+            new GameEvent.Removed());
+
+    private List<Entry> writeAndRead(long[] chats) throws Exception {
+        GameArchive archive = new GameArchive(dir);
+        archive.open();
+        long before = System.currentTimeMillis();
+        for (long chat : chats) {
+            for (GameEvent event : EVENTS) {
+                archive.record(chat, event);
+            }
+        }
+        archive.close();
+        long after = System.currentTimeMillis();
+
+        List<Entry> read = new ArrayList<>();
+        for (Path file : GameArchive.listFiles(dir)) {
+            GameArchive.read(file, (time, chat, event) -> read.add(new Entry(time, chat, event)));
+        }
+        for (Entry e : read) {
+            assertTrue(e.timeMillis() >= before && e.timeMillis() <= after, "time " + e.timeMillis());
+        }
+        return read;
+    }
+
+    private static void assertSameEvent(GameEvent expected, GameEvent actual) {
+        if (expected instanceof GameEvent.RolesAssigned r && actual instanceof GameEvent.RolesAssigned a) {
+            assertArrayEquals(r.order(), a.order());
+            assertEquals(r.quota(), a.quota());
+            assertEquals(r.seed(), a.seed());
+        } else {
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void allEventsRoundTrip() throws Exception {
+        long[] chats = {-1001234567890L, 0, Long.MIN_VALUE, Long.MAX_VALUE};
+        List<Entry> read = writeAndRead(chats);
+
+        assertEquals(chats.length * EVENTS.size(), read.size());
+        for (int i = 0; i < read.size(); i++) {
+            assertEquals(chats[i / EVENTS.size()], read.get(i).gameChatId());
+            assertSameEvent(EVENTS.get(i % EVENTS.size()), read.get(i).event());
+        }
+        for (int i = 1; i < read.size(); i++) {
+            assertTrue(read.get(i).timeMillis() >= read.get(i - 1).timeMillis());
+        }
+    }
+
+    @Test
+    void truncatedTailIsSkipped() throws Exception {
+        writeAndRead(new long[]{-100});
+        Path file = GameArchive.listFiles(dir).get(0);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1); // обрываем последнюю запись
+        }
+
+        List<GameEvent> read = new ArrayList<>();
+        long count = GameArchive.read(file, (time, chat, event) -> read.add(event));
+        assertEquals(EVENTS.size() - 1, count);
+        assertEquals(EVENTS.size() - 1, read.size());
+    }
+
+    @Test
+    void foreignFileIsRejected() throws Exception {
+        Path file = dir.resolve("archive-1.bin");
+        Files.write(file, new byte[]{'N', 'O', 'P', 'E', 1, 0, 0, 0, 0, 0, 0, 0, 0});
+        assertThrows(IOException.class, () -> GameArchive.read(file, (time, chat, event) -> {}));
+    }
+}
@@ -0,0 +1,108 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameJournalTest {
+    private static final long CHAT = -1001234567890L;
+
+    @TempDir
+    Path dir;
+
+    private static GameCore lobby(int players) {
+        GameCore game = new GameCore();
+        game.setGameChatId(CHAT);
+        for (int i = 1; i <= players; i++) {
+            game.addPlayer(i, "user" + i);
+        }
+        return game;
+    }
+
+    private static GameCore replay(String snapshot) {
+        GameCore copy = new GameCore();
+        copy.setGameChatId(CHAT);
+        GameJournal.decodeSnapshot(snapshot).forEach(copy::apply);
+        return copy;
+    }
+
+    private static void assertSameGame(GameCore expected, GameCore actual) {
+        assertEquals(expected.getGameState(), actual.getGameState());
+        assertArrayEquals(expected.getPlayerIds(), actual.getPlayerIds());
+        assertEquals(expected.getShuffleSeed(), actual.getShuffleSeed());
+        assertEquals(expected.getPhaseDeadline(), actual.getPhaseDeadline());
+        for (Player p : expected.getPlayers()) {
+            Player q = actual.findPlayerById(p.getUserId());
+            assertEquals(p.getUsername(), q.getUsername());
+            assertEquals(p.getRole(), q.getRole());
+            assertEquals(p.isAlive(), q.isAlive());
+        }
+    }
+
+    @Test
+    void lobbySnapshotKeepsOrderAndQuota() {
+        GameCore game = lobby(6);
+        game.setRoleQuota(new RoleQuota(1, 1, 0));
+
+        GameCore copy = replay(new GameJournal(dir).encodeSnapshot(game));
+        assertSameGame(game, copy);
+        assertEquals(game.getRoleQuota(), copy.getRoleQuota());
+    }
+
+    @Test
+    void runningGameSnapshotReplays() {
+        GameCore game = lobby(8);
+        game.startGame(42);
+        game.setPhaseDeadline(1_700_000_000_000L);
+        long mafia = game.getMafiaTeam()[0];
+        Player victim = game.getPlayers().stream()
+                .filter(p -> p.getRole() == Role.CIVILIAN)
+                .findFirst().orElseThrow();
+        game.processNightAction(game.findPlayerById(mafia), victim);
+
+        GameCore copy = replay(new GameJournal(dir).encodeSnapshot(game));
+        assertSameGame(game, copy);
+
+        // Незавершённое ночное действие тоже в снапшоте: итог ночи совпадает
+        game.resolveNightActions();
+        copy.resolveNightActions();
+        assertSameGame(game, copy);
+        assertFalse(copy.findPlayerById(victim.getUserId()).isAlive());
+    }
+
+    @Test
+    void endedGameHasNoSnapshot() {
+        GameCore game = lobby(4);
+        game.setGameState(GameCore.GameState.ENDED);
+        assertEquals("", new GameJournal(dir).encodeSnapshot(game));
+    }
+
+    @Test
+    void recoverReplaysJournal() throws Exception {
+        GameRegistry games = new GameRegistry();
+        GameJournal journal = new GameJournal(dir);
+        journal.recover(games);
+        games.setEventSink(journal);
+        GameCore game = games.getOrCreate(CHAT);
+        for (int i = 1; i <= 5; i++) {
+            game.addPlayer(i, "user" + i);
+        }
+        game.startGame(7);
+        games.getOrCreate(-42).addPlayer(100, "lonely");
+        games.getOrCreate(-43).addPlayer(200, "gone");
+        games.remove(-43);
+        journal.close();
+
+        GameRegistry recovered = new GameRegistry();
+        GameJournal reopened = new GameJournal(dir);
+        reopened.recover(recovered);
+        reopened.close();
+
+        assertEquals(2, recovered.size());
+        assertSameGame(game, recovered.findByChat(CHAT));
+        assertSame(recovered.findByChat(CHAT), recovered.findByPlayer(3));
+        assertArrayEquals(new long[]{100}, recovered.findByChat(-42).getPlayerIds());
+        assertNull(recovered.findByChat(-43));
+    }
+}
@@ -0,0 +1,54 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameRegistryTest {
+    private final GameRegistry games = new GameRegistry();
+
+    private void lobby(long chatId, long userId) throws InterruptedException {
+        games.getOrCreate(chatId).addPlayer(userId, "user" + userId);
+        Thread.sleep(5); // разные отметки активности
+    }
+
+    @Test
+    void idleLobbiesByTtlAndOverflow() throws InterruptedException {
+        lobby(-1, 1);
+        lobby(-2, 2);
+        lobby(-3, 3);
+        long now = System.currentTimeMillis();
+
+        assertTrue(games.idleLobbies(now, 60_000, 10).isEmpty());
+        assertEquals(List.of(-1L, -2L, -3L), List.copyOf(games.idleLobbies(now + 60_000, 60_000, 10).keySet()));
+        // Сверх лимита выселяются самые давние
+        assertEquals(List.of(-1L), List.copyOf(games.idleLobbies(now, 60_000, 2).keySet()));
+    }
+
+    @Test
+    void startedGamesAreNotLobbies() throws InterruptedException {
+        lobby(-1, 1);
+        GameCore game = games.getOrCreate(-2);
+        for (long id = 10; id < 15; id++) {
+            game.addPlayer(id, "user" + id);
+        }
+        game.startGame(1);
+        games.lobbyStarted(-2);
+
+        assertEquals(List.of(-1L), List.copyOf(games.idleLobbies(Long.MAX_VALUE, 0, 10).keySet()));
+        assertEquals(1, games.getLobbyCount());
+    }
+
+    @Test
+    void activityCancelsEviction() throws InterruptedException {
+        lobby(-1, 1);
+        Map<Long, Long> idle = games.idleLobbies(Long.MAX_VALUE, 0, 10);
+        assertTrue(games.isLobbyIdleSince(-1, idle.get(-1L)));
+
+        games.touchLobby(-1);
+        assertFalse(games.isLobbyIdleSince(-1, idle.get(-1L)));
+        games.remove(-1);
+        assertFalse(games.isLobbyIdleSince(-1, idle.get(-1L)));
+    }
+}
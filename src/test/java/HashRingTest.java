@@ -0,0 +1,60 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashRingTest {
+    private static final int KEYS = 100_000;
+
+    private static long chat(int i) {
+        return -1_000_000_000_000L - i;
+    }
+
+    @Test
+    void emptyRingHasNoOwner() {
+        assertTrue(HashRing.EMPTY.isEmpty());
+        assertNull(HashRing.EMPTY.owner(42));
+    }
+
+    @Test
+    void ownershipDoesNotDependOnWorkerOrder() {
+        HashRing a = new HashRing(List.of("w1", "w2", "w3"));
+        HashRing b = new HashRing(List.of("w3", "w1", "w2"));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(a.owner(chat(i)), b.owner(chat(i)));
+        }
+    }
+
+    @Test
+    void keysAreSpreadEvenly() {
+        HashRing ring = new HashRing(List.of("w1", "w2", "w3", "w4"));
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.owner(chat(i)), 1, Integer::sum);
+        }
+        assertEquals(4, counts.size());
+        // 128 точек на воркер: отклонение от четверти в пределах ±30%
+        counts.values().forEach(n -> assertTrue(n > KEYS / 4 * 0.7 && n < KEYS / 4 * 1.3, "keys " + n));
+    }
+
+    // Выход воркера переносит только его ключи — примерно 1/N от всех
+    @Test
+    void membershipChangeMovesOnlyAffectedKeys() {
+        HashRing three = new HashRing(List.of("w1", "w2", "w3"));
+        HashRing two = new HashRing(List.of("w1", "w2"));
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String before = three.owner(chat(i));
+            String after = two.owner(chat(i));
+            if (!before.equals("w3")) {
+                assertEquals(before, after);
+            } else {
+                moved++;
+            }
+        }
+        assertTrue(moved > KEYS / 3 * 0.7 && moved < KEYS / 3 * 1.3, "moved " + moved);
+    }
+}
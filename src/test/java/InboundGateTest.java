@@ -0,0 +1,65 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InboundGateTest {
+    @TempDir
+    Path dir;
+
+    private int accepted(InboundGate gate, long userId, int attempts) {
+        int accepted = 0;
+        for (int i = 0; i < attempts; i++) {
+            if (gate.tryAcquire(userId, InboundGate.Priority.COMMAND)) {
+                gate.release();
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    @Test
+    void burstPerUser() throws Exception {
+        Path file = dir.resolve("mafia.properties");
+        Files.write(file, List.of("INBOUND_PER_SECOND=1", "INBOUND_BURST=3"));
+        InboundGate gate = new InboundGate(100, new ConfigWatcher(BotConfig.load(file), file), new Metrics());
+
+        assertEquals(3, accepted(gate, 1, 10));
+        assertEquals(3, accepted(gate, 2, 10)); // у каждого пользователя своя корзина
+    }
+
+    // Новые лимиты применяются и к тем, у кого корзина уже есть
+    @Test
+    void reloadedLimitsApplyToActiveUsers() throws Exception {
+        Path file = dir.resolve("mafia.properties");
+        Files.write(file, List.of("INBOUND_PER_SECOND=1", "INBOUND_BURST=2"));
+        ConfigWatcher config = new ConfigWatcher(BotConfig.load(file), file);
+        InboundGate gate = new InboundGate(100, config, new Metrics());
+        assertEquals(2, accepted(gate, 1, 10));
+
+        // Перечитка без смены лимитов не выдаёт всплеск заново
+        Files.write(file, List.of("INBOUND_PER_SECOND=1", "INBOUND_BURST=2", "NIGHT_SECONDS=60"));
+        config.reload();
+        assertEquals(0, accepted(gate, 1, 10));
+
+        Files.write(file, List.of("INBOUND_PER_SECOND=1", "INBOUND_BURST=6"));
+        config.reload();
+        assertEquals(6, accepted(gate, 1, 10));
+    }
+
+    @Test
+    void chatterIsShedFirst() throws Exception {
+        InboundGate gate = new InboundGate(4, new ConfigWatcher(BotConfig.withPhases(Duration.ofSeconds(1)), null),
+                new Metrics());
+        assertTrue(gate.tryAcquire(1, InboundGate.Priority.CHATTER));
+        assertTrue(gate.tryAcquire(2, InboundGate.Priority.CHATTER));
+        assertFalse(gate.tryAcquire(3, InboundGate.Priority.CHATTER));
+        assertTrue(gate.tryAcquire(3, InboundGate.Priority.COMMAND));
+        assertEquals(3, gate.getPending());
+    }
+}
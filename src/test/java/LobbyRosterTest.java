@@ -0,0 +1,48 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LobbyRosterTest {
+    @Test
+    void keepsJoinOrderAndRejectsDuplicates() {
+        LobbyRoster roster = new LobbyRoster();
+        for (long id = 1; id <= 1000; id++) {
+            assertTrue(roster.add(id * 7919, "user" + id));
+        }
+        assertFalse(roster.add(7919, "again"));
+        assertEquals(1000, roster.size());
+        for (int i = 0; i < 1000; i++) {
+            long id = (i + 1) * 7919L;
+            assertEquals(i, roster.indexOf(id));
+            assertEquals(id, roster.idAt(i));
+            assertEquals("user" + (i + 1), roster.nameAt(i));
+        }
+        assertFalse(roster.contains(7918));
+
+        roster.clear();
+        assertEquals(0, roster.size());
+        assertFalse(roster.contains(7919));
+        assertTrue(roster.add(7919, "back"));
+    }
+
+    // Старые зёрна из архива должны давать ту же раздачу, что и Collections.shuffle над списком лобби
+    @Test
+    void shuffledOrderMatchesCollectionsShuffle() {
+        GameCore game = new GameCore();
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 37; id++) {
+            game.addPlayer(id, "user" + id);
+            ids.add(id);
+        }
+        for (long seed = 0; seed < 50; seed++) {
+            List<Long> expected = new ArrayList<>(ids);
+            Collections.shuffle(expected, new Random(seed));
+            assertArrayEquals(expected.stream().mapToLong(Long::longValue).toArray(), game.shuffledOrder(seed));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongMapTest {
+    @Test
+    void putGetReplaceRemove() {
+        LongMap<String> map = new LongMap<>();
+        assertNull(map.put(5, "a"));
+        assertEquals("a", map.put(5, "b"));
+        assertEquals("b", map.get(5));
+        assertTrue(map.containsKey(5));
+        assertEquals("b", map.remove(5));
+        assertNull(map.get(5));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void rejectsNullValues() {
+        assertThrows(IllegalArgumentException.class, () -> new LongMap<String>().put(1, null));
+    }
+
+    // Случайные вставки и удаления против HashMap: удаление не должно рвать цепочки пробирования
+    @Test
+    void matchesHashMapUnderRandomOperations() {
+        LongMap<Long> map = new LongMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            long key = random.nextInt(500) - 250;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals(value, map.get(key)));
+        Map<Long, Long> seen = new HashMap<>();
+        map.forEach(seen::put);
+        assertEquals(expected, seen);
+    }
+}
@@ -0,0 +1,193 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.ApiResponse;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageDispatcherTest {
+    private static final long GROUP = -100;
+
+    private final ConcurrentHashMap<String, Integer> sentTo = new ConcurrentHashMap<>(); // chatId → отправлено
+    private final ConcurrentHashMap<String, List<Long>> attempts = new ConcurrentHashMap<>(); // chatId → nanoTime попыток
+    private final ConcurrentHashMap<String, Queue<Throwable>> failures = new ConcurrentHashMap<>(); // chatId → ошибки ближайших попыток
+    private MessageDispatcher dispatcher = new MessageDispatcher(this::send, 1_000, true, new Metrics());
+
+    @AfterEach
+    void shutdown() {
+        dispatcher.shutdown();
+    }
+
+    // Очередь занятой группы (20/мин, всплеск 5) не задерживает личку другим игрокам
+    @Test
+    void busyChatDoesNotDelayOtherChats() throws Exception {
+        for (int i = 0; i < 15; i++) {
+            dispatcher.submit(message(GROUP, "group " + i), MessageDispatcher.Priority.NORMAL);
+        }
+        List<CompletableFuture<Message>> direct = new ArrayList<>();
+        for (long userId = 1; userId <= 10; userId++) {
+            direct.add(dispatcher.submit(message(userId, "dm"), MessageDispatcher.Priority.NORMAL));
+        }
+        CompletableFuture.allOf(direct.toArray(CompletableFuture[]::new)).get(2, TimeUnit.SECONDS);
+        assertEquals(5, sentTo.get(String.valueOf(GROUP)));
+        assertEquals(10, dispatcher.getQueueSize()); // остаток группы ждёт на её линии
+    }
+
+    @Test
+    void highPriorityIsNotQueuedBehindThrottledChat() throws Exception {
+        for (int i = 0; i < 25; i++) {
+            dispatcher.submit(message(GROUP, "group " + i), MessageDispatcher.Priority.NORMAL);
+        }
+        dispatcher.submit(message(42, "role"), MessageDispatcher.Priority.HIGH).get(1, TimeUnit.SECONDS);
+    }
+
+    // Ждущие своего лимита сообщения считаются неотправленными
+    @Test
+    void throttledMessagesStayPending() throws Exception {
+        for (int i = 0; i < 8; i++) {
+            dispatcher.submit(message(GROUP, "group " + i), MessageDispatcher.Priority.NORMAL);
+        }
+        assertFalse(dispatcher.awaitDrained(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500)));
+        assertEquals(3, dispatcher.getQueueSize());
+    }
+
+    @Test
+    void transientFailuresRetryWithBackoff() throws Exception {
+        failWith(5, new TelegramApiException("connection reset"), new TelegramApiException("connection reset"));
+        dispatcher.submit(message(5, "text"), MessageDispatcher.Priority.NORMAL).get(5, TimeUnit.SECONDS);
+
+        List<Long> times = attempts.get("5");
+        assertEquals(3, times.size());
+        // Половина экспоненты плюс джиттер: 250–500 мс, потом 500–1000 мс
+        assertTrue(times.get(1) - times.get(0) >= TimeUnit.MILLISECONDS.toNanos(250));
+        assertTrue(times.get(2) - times.get(1) >= TimeUnit.MILLISECONDS.toNanos(500));
+    }
+
+    @Test
+    void normalGivesUpAfterMaxAttempts() {
+        failWith(5, new TelegramApiException("a"), new TelegramApiException("b"), new TelegramApiException("c"));
+        CompletableFuture<Message> result = dispatcher.submit(message(5, "text"), MessageDispatcher.Priority.NORMAL);
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertEquals("c", error.getCause().getMessage());
+        assertEquals(3, attempts.get("5").size());
+        assertEquals(0, dispatcher.getQueueSize());
+    }
+
+    @Test
+    void permanentErrorIsNotRetried() throws Exception {
+        failWith(5, apiError(403, null));
+        CompletableFuture<Message> result = dispatcher.submit(message(5, "text"), MessageDispatcher.Priority.HIGH);
+
+        assertThrows(ExecutionException.class, () -> result.get(1, TimeUnit.SECONDS));
+        Thread.sleep(700);
+        assertEquals(1, attempts.get("5").size());
+    }
+
+    // retry_after из 429 выдерживается и для следующих сообщений в тот же чат
+    @Test
+    void retryAfterHoldsTheWholeChat() throws Exception {
+        failWith(5, apiError(429, 1));
+        CompletableFuture<Message> first = dispatcher.submit(message(5, "first"), MessageDispatcher.Priority.NORMAL);
+        awaitAttempts(5, 1);
+        long failedAt = attempts.get("5").get(0);
+        CompletableFuture<Message> second = dispatcher.submit(message(5, "second"), MessageDispatcher.Priority.NORMAL);
+
+        CompletableFuture.allOf(first, second).get(5, TimeUnit.SECONDS);
+        List<Long> times = attempts.get("5");
+        assertEquals(3, times.size());
+        for (long at : times.subList(1, 3)) {
+            assertTrue(at - failedAt >= TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    @Test
+    void criticalRetriesPastNormalCap() throws Exception {
+        failWith(5, new TelegramApiException("a"), new TelegramApiException("b"), new TelegramApiException("c"));
+        dispatcher.submitCritical(message(5, "role"), "role:5").get(10, TimeUnit.SECONDS);
+        assertEquals(4, attempts.get("5").size());
+    }
+
+    @Test
+    void criticalIsDeduplicatedByKey() throws Exception {
+        CompletableFuture<Message> first = dispatcher.submitCritical(message(5, "role"), "role:5");
+        CompletableFuture<Message> again = dispatcher.submitCritical(message(5, "role"), "role:5");
+        assertSame(first, again);
+        first.get(1, TimeUnit.SECONDS);
+        // Уже доставленное в пределах окна тоже не уходит второй раз
+        assertSame(first, dispatcher.submitCritical(message(5, "role"), "role:5"));
+        dispatcher.submitCritical(message(5, "other"), "role:6").get(2, TimeUnit.SECONDS);
+        assertEquals(2, sentTo.get("5"));
+    }
+
+    // Разомкнутый breaker держит сообщения в очереди, а после паузы пробу не забирает сообщение,
+    // которое само ждёт retry_after своего чата
+    @Test
+    void breakerPausesSendsAndRecoversPastThrottledChat() throws Exception {
+        dispatcher.shutdown();
+        CircuitBreaker breaker = new CircuitBreaker(5, 500, TimeUnit.MILLISECONDS);
+        dispatcher = new MessageDispatcher(this::send, 1_000, true, new Metrics(), breaker);
+
+        failWith(1, apiError(429, 40));
+        dispatcher.submit(message(1, "held"), MessageDispatcher.Priority.NORMAL);
+        awaitAttempts(1, 1);
+        List<CompletableFuture<Message>> retried = new ArrayList<>();
+        for (long chatId = 2; chatId <= 6; chatId++) {
+            failWith(chatId, new TelegramApiException("timeout"));
+            retried.add(dispatcher.submit(message(chatId, "text"), MessageDispatcher.Priority.NORMAL));
+            awaitAttempts(chatId, 1);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        CompletableFuture<Message> throttled = dispatcher.submit(message(1, "vote"), MessageDispatcher.Priority.HIGH);
+        CompletableFuture<Message> other = dispatcher.submit(message(7, "text"), MessageDispatcher.Priority.NORMAL);
+        Thread.sleep(150);
+        assertNull(attempts.get("7"));
+
+        other.get(3, TimeUnit.SECONDS);
+        CompletableFuture.allOf(retried.toArray(CompletableFuture[]::new)).get(3, TimeUnit.SECONDS);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertFalse(throttled.isDone());
+    }
+
+    private CompletableFuture<Message> send(SendMessage message) {
+        attempts.computeIfAbsent(message.getChatId(), id -> new CopyOnWriteArrayList<>()).add(System.nanoTime());
+        Queue<Throwable> next = failures.get(message.getChatId());
+        Throwable failure = next == null ? null : next.poll();
+        if (failure != null) return CompletableFuture.failedFuture(failure);
+        sentTo.merge(message.getChatId(), 1, Integer::sum);
+        return CompletableFuture.completedFuture(new Message());
+    }
+
+    private void failWith(long chatId, Throwable... errors) {
+        failures.computeIfAbsent(String.valueOf(chatId), id -> new ConcurrentLinkedQueue<>()).addAll(List.of(errors));
+    }
+
+    private void awaitAttempts(long chatId, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (attempts.getOrDefault(String.valueOf(chatId), List.of()).size() < count) {
+            assertTrue(System.nanoTime() < deadline, "no attempt to " + chatId);
+            Thread.sleep(5);
+        }
+    }
+
+    private static TelegramApiRequestException apiError(int code, Integer retryAfter) throws Exception {
+        String parameters = retryAfter == null ? "" : ",\"parameters\":{\"retry_after\":" + retryAfter + "}";
+        ApiResponse<?> response = new ObjectMapper().readValue(
+                "{\"ok\":false,\"error_code\":" + code + ",\"description\":\"error\"" + parameters + "}", ApiResponse.class);
+        return new TelegramApiRequestException("Error sending message", response);
+    }
+
+    private static SendMessage message(long chatId, String text) {
+        return new SendMessage(String.valueOf(chatId), text);
+    }
+}
@@ -0,0 +1,35 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+    @Test
+    void servesOnLoopbackByDefault() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.serve("", 0);
+        try {
+            assertEquals(InetAddress.getLoopbackAddress(), metrics.address().getAddress());
+        } finally {
+            metrics.stop();
+        }
+    }
+
+    @Test
+    void explicitBindAddressIsUsed() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.serve("0.0.0.0", 0);
+        try {
+            assertTrue(metrics.address().getAddress().isAnyLocalAddress());
+        } finally {
+            metrics.stop();
+        }
+    }
+
+    @Test
+    void unknownBindAddressFails() {
+        assertThrows(IOException.class, () -> new Metrics().serve("no-such-host.invalid", 0));
+    }
+}
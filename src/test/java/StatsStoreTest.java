@@ -0,0 +1,114 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatsStoreTest {
+    @TempDir
+    Path dir;
+
+    private final List<StatsStore> opened = new ArrayList<>();
+
+    @AfterEach
+    void close() {
+        opened.forEach(StatsStore::close);
+    }
+
+    private StatsStore open(int topSize) throws Exception {
+        StatsStore store = new StatsStore(dir, topSize);
+        store.load();
+        opened.add(store);
+        return store;
+    }
+
+    private static StatsStore.Result win(long userId) {
+        return new StatsStore.Result(userId, "user" + userId, Role.CIVILIAN, true, true);
+    }
+
+    private static StatsStore.Result loss(long userId) {
+        return new StatsStore.Result(userId, "user" + userId, Role.MAFIA, false, false);
+    }
+
+    private static List<String> top(StatsStore store) {
+        List<String> names = new ArrayList<>();
+        for (String line : store.getTopText().split("\n")) {
+            int dot = line.indexOf(". ");
+            if (dot > 0) names.add(line.substring(dot + 2, line.indexOf(" — ")));
+        }
+        return names;
+    }
+
+    @Test
+    void topKeepsMostWinsAndBreaksTiesById() throws Exception {
+        StatsStore store = open(3);
+        assertTrue(top(store).isEmpty());
+
+        store.record(List.of(win(4), win(2), win(3), loss(1)));
+        assertEquals(List.of("user2", "user3", "user4"), top(store));
+
+        // При равенстве побед выше меньший id: user1 вытесняет user4, а user5 в топ не попадает
+        store.record(List.of(win(1), win(5)));
+        assertEquals(List.of("user1", "user2", "user3"), top(store));
+        store.record(List.of(win(5)));
+        assertEquals(List.of("user5", "user1", "user2"), top(store));
+        // Вытесненный игрок возвращается, когда побед становится больше, чем у последнего в топе
+        store.record(List.of(win(4), win(4)));
+        assertEquals(List.of("user4", "user5", "user1"), top(store));
+
+        PlayerStats four = store.get(4);
+        assertEquals(3, four.getWins());
+        assertEquals(3, four.getGames(Role.CIVILIAN));
+        assertEquals(50, store.get(1).getWinRatePercent());
+    }
+
+    @Test
+    void reloadReplaysLog() throws Exception {
+        StatsStore store = open(3);
+        store.record(List.of(win(1), loss(2)));
+        store.record(List.of(new StatsStore.Result(2, "renamed", Role.DOCTOR, true, false)));
+        store.close();
+
+        StatsStore reloaded = open(3);
+        assertEquals(2, reloaded.get(2).getGames());
+        assertEquals("renamed", reloaded.get(2).getUsername());
+        assertEquals(1, reloaded.get(2).getWins(Role.DOCTOR));
+        assertEquals(List.of("user1", "renamed"), top(reloaded));
+    }
+
+    @Test
+    void compactionCountsEveryResultOnce() throws Exception {
+        StatsStore store = open(5);
+        for (int i = 0; i < 999; i++) {
+            store.record(List.of(win(1), loss(2), win(3), loss(4), win(5), loss(6), win(7), loss(8), win(9), loss(10)));
+        }
+        store.close();
+        Path log = dir.resolve("stats.log");
+        Path staleLog = dir.resolve("stale.log");
+        Files.copy(log, staleLog);
+
+        store = open(5);
+        store.record(List.of(win(1), loss(2), win(3), loss(4), win(5), loss(6), win(7), loss(8), win(9), loss(10)));
+        store.record(List.of(win(1)));
+        store.close();
+        assertTrue(Files.exists(log)); // новый лог после сжатия: только последняя партия
+
+        StatsStore reloaded = open(5);
+        assertEquals(1001, reloaded.get(1).getWins());
+        assertEquals(1000, reloaded.get(2).getGames());
+        reloaded.close();
+
+        // Падение между заменой таблицы и удалением лога: старый лог остался рядом с новой таблицей
+        Files.move(staleLog, log, StandardCopyOption.REPLACE_EXISTING);
+        StatsStore recovered = open(5);
+        assertEquals(1000, recovered.get(1).getWins());
+        assertEquals(1000, recovered.get(2).getGames());
+        assertFalse(Files.exists(log));
+    }
+}
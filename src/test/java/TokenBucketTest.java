@@ -0,0 +1,43 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void allowsBurstThenOnePerInterval() {
+        TokenBucket bucket = new TokenBucket(1, 1, TimeUnit.SECONDS, 3);
+        long now = System.nanoTime();
+        assertTrue(bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now));
+        assertFalse(bucket.tryAcquire(now));
+        assertEquals(SECOND, bucket.nanosUntilAvailable(now), SECOND / 100);
+        assertTrue(bucket.tryAcquire(now + SECOND + SECOND / 100));
+    }
+
+    @Test
+    void reserveSpacesSlotsAfterBurst() {
+        TokenBucket bucket = new TokenBucket(20, 1, TimeUnit.MINUTES, 5);
+        long now = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(now, bucket.reserve(now));
+        }
+        long interval = TimeUnit.MINUTES.toNanos(1) / 20;
+        assertEquals(interval, bucket.reserve(now) - now, interval / 100);
+        assertEquals(2 * interval, bucket.reserve(now) - now, interval / 100);
+    }
+
+    @Test
+    void pushBackHoldsUntilRetryAfter() {
+        TokenBucket bucket = new TokenBucket(1, 1, TimeUnit.SECONDS, 3);
+        long now = System.nanoTime();
+        bucket.pushBack(now + 5 * SECOND);
+        assertFalse(bucket.tryAcquire(now + 4 * SECOND));
+        assertTrue(bucket.tryAcquire(now + 5 * SECOND));
+        assertFalse(bucket.isIdle(now + 5 * SECOND));
+    }
+}
@@ -0,0 +1,69 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VoteTallyTest {
+    private final Player alice = new Civilian(1, "alice");
+    private final Player bob = new Civilian(2, "bob");
+    private final Player carol = new Civilian(3, "carol");
+    private final VoteTally tally = new VoteTally();
+
+    @Test
+    void emptyTallyHasNoLeader() {
+        assertTrue(tally.isEmpty());
+        assertNull(tally.getLeader());
+        assertFalse(tally.isTie());
+    }
+
+    @Test
+    void leaderAndTie() {
+        tally.vote(10, alice);
+        tally.vote(11, alice);
+        tally.vote(12, bob);
+        assertSame(alice, tally.getLeader());
+        assertEquals(2, tally.getMaxVotes());
+
+        tally.vote(13, bob);
+        assertTrue(tally.isTie());
+        assertNull(tally.getLeader());
+        assertEquals(Map.of("alice", 2, "bob", 2), tally.getCounts());
+    }
+
+    // Сменённый голос уходит от прежнего кандидата, и лидер пересчитывается
+    @Test
+    void changedVoteMovesBetweenCandidates() {
+        tally.vote(10, alice);
+        tally.vote(11, alice);
+        tally.vote(12, bob);
+        tally.vote(11, bob);
+        assertSame(bob, tally.getLeader());
+        assertEquals(1, tally.votesFor(alice));
+        tally.vote(10, carol);
+        assertSame(bob, tally.getLeader());
+        assertEquals(2, tally.getMaxVotes());
+        assertEquals(0, tally.votesFor(alice));
+        assertFalse(tally.getCounts().containsKey("alice"));
+        assertEquals(3, tally.getVoterCount());
+    }
+
+    @Test
+    void repeatedVoteForSameTargetIsIgnored() {
+        tally.vote(10, alice);
+        tally.vote(10, alice);
+        assertEquals(1, tally.votesFor(alice));
+    }
+
+    @Test
+    void clearResetsEverything() {
+        tally.vote(10, alice);
+        tally.vote(11, bob);
+        tally.clear();
+        assertTrue(tally.isEmpty());
+        assertEquals(0, tally.getVoterCount());
+        assertTrue(tally.getCounts().isEmpty());
+        tally.vote(10, carol);
+        assertSame(carol, tally.getLeader());
+    }
+}